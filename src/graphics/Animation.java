@@ -1,61 +1,99 @@
 package graphics;
 
 import java.awt.Image;
-import java.util.ArrayList;
 
 /**
     The Animation class manages a series of images (frames) and
     the amount of time to display each frame.
+    <p>
+    The frames are kept in an immutable FrameTable shared by all
+    clones of an Animation, so cloning copies only a reference.
+    Each Animation keeps its own position in the table, and isn't
+    synchronized: an Animation belongs to one sprite and is only
+    used by the thread updating that sprite.
 */
 public class Animation {
 
-    private ArrayList frames;
+    // animations with more frames than this find the current
+    // frame by binary search when they jump ahead more than one
+    // frame, instead of stepping through the frames in between
+    private static final int BINARY_SEARCH_FRAMES = 8;
+
+    private static final FrameTable EMPTY_TABLE =
+        new FrameTable(new Image[0], new long[0]);
+
+    private FrameTable table;
     private int currFrameIndex;
     private long animTime;
-    private long totalDuration;
 
 
     /**
         Creates a new, empty Animation.
     */
     public Animation() {
-        this(new ArrayList(), 0);
+        this(EMPTY_TABLE);
     }
 
 
-    private Animation(ArrayList frames, long totalDuration) {
-        this.frames = frames;
-        this.totalDuration = totalDuration;
+    private Animation(FrameTable table) {
+        this.table = table;
         start();
     }
 
 
     /**
-        Creates a duplicate of this animation. The list of frames
-        are shared between the two Animations, but each Animation
+        Creates a duplicate of this animation. The frames are
+        shared between the two Animations, but each Animation
         can be animated independently.
     */
     public Object clone() {
-        return new Animation(frames, totalDuration);
+        return new Animation(table);
     }
 
 
     /**
         Adds an image to the animation with the specified
-        duration (time to display the image).
+        duration (time to display the image). Since the frame
+        table is immutable, this builds a new table; clones made
+        before the frame was added don't get it, so add all the
+        frames before cloning.
+    */
+    public void addFrame(Image image, long duration) {
+        table = table.addFrame(image, duration);
+    }
+
+
+    /**
+        Gets the number of frames in this Animation.
+    */
+    public int getNumFrames() {
+        return table.images.length;
+    }
+
+
+    /**
+        Gets the image of the specified frame.
+    */
+    public Image getFrameImage(int i) {
+        return table.images[i];
+    }
+
+
+    /**
+        Looks up each frame's image in the specified TextureAtlas,
+        so getRegion() returns where the frame is in the atlas.
+        Since the frames are shared, this affects every clone of
+        this Animation.
     */
-    public synchronized void addFrame(Image image,
-        long duration)
-    {
-        totalDuration += duration;
-        frames.add(new AnimFrame(image, totalDuration));
+    public void useAtlas(TextureAtlas atlas) {
+        table.useAtlas(atlas);
     }
 
 
     /**
         Starts this animation over from the beginning.
     */
-    public synchronized void start() {
+    public void start() {
         animTime = 0;
         currFrameIndex = 0;
     }
@@ -65,17 +103,24 @@ public class Animation {
         Updates this animation's current image (frame), if
         neccesary.
     */
-    public synchronized void update(long elapsedTime) {
-        if (frames.size() > 1) {
+    public void update(long elapsedTime) {
+        FrameTable table = this.table;
+        if (table.images.length > 1 && table.totalDuration > 0) {
             animTime += elapsedTime;
 
-            if (animTime >= totalDuration) {
-                animTime = animTime % totalDuration;
+            if (animTime >= table.totalDuration) {
+                animTime = animTime % table.totalDuration;
                 currFrameIndex = 0;
             }
 
-            while (animTime > getFrame(currFrameIndex).endTime) {
+            long[] endTimes = table.endTimes;
+            if (animTime > endTimes[currFrameIndex]) {
+                // usually the next frame; otherwise, search
                 currFrameIndex++;
+                if (animTime > endTimes[currFrameIndex]) {
+                    currFrameIndex = table.findFrame(animTime,
+                        currFrameIndex);
+                }
             }
         }
     }
@@ -85,29 +130,99 @@ public class Animation {
         Gets this Animation's current image. Returns null if this
         animation has no images.
     */
-    public synchronized Image getImage() {
-        if (frames.size() == 0) {
-            return null;
-        }
-        else {
-            return getFrame(currFrameIndex).image;
-        }
+    public Image getImage() {
+        Image[] images = table.images;
+        return (images.length == 0) ? null : images[currFrameIndex];
     }
 
 
-    private AnimFrame getFrame(int i) {
-        return (AnimFrame)frames.get(i);
+    /**
+        Gets the TextureAtlas Region of this Animation's current
+        image. Returns null if this animation has no images, or if
+        the image isn't in an atlas.
+    */
+    public TextureAtlas.Region getRegion() {
+        TextureAtlas.Region[] regions = table.regions;
+        return (regions.length == 0) ?
+            null : regions[currFrameIndex];
     }
 
 
-    private class AnimFrame {
+    /**
+        A FrameTable holds the images of an animation's frames
+        and the time each frame ends, in parallel arrays. Frame i
+        is shown while the animation time is at most
+        endTimes[i]. The images and times never change once the
+        table is built; only the atlas regions are filled in, once,
+        when the atlas is packed.
+    */
+    private static final class FrameTable {
+
+        final Image[] images;
+        final TextureAtlas.Region[] regions;
+        final long[] endTimes;
+        final long totalDuration;
+
+        FrameTable(Image[] images, long[] endTimes) {
+            this.images = images;
+            this.endTimes = endTimes;
+            regions = new TextureAtlas.Region[images.length];
+            totalDuration = (endTimes.length == 0) ?
+                0 : endTimes[endTimes.length - 1];
+        }
 
-        Image image;
-        long endTime;
 
-        public AnimFrame(Image image, long endTime) {
-            this.image = image;
-            this.endTime = endTime;
+        /**
+            Creates a new table with the frames of this one, plus
+            the specified frame at the end.
+        */
+        FrameTable addFrame(Image image, long duration) {
+            int n = images.length;
+            Image[] newImages = new Image[n + 1];
+            long[] newEndTimes = new long[n + 1];
+            System.arraycopy(images, 0, newImages, 0, n);
+            System.arraycopy(endTimes, 0, newEndTimes, 0, n);
+            newImages[n] = image;
+            newEndTimes[n] = totalDuration + duration;
+            FrameTable table = new FrameTable(newImages, newEndTimes);
+            System.arraycopy(regions, 0, table.regions, 0, n);
+            return table;
+        }
+
+
+        void useAtlas(TextureAtlas atlas) {
+            for (int i=0; i<images.length; i++) {
+                regions[i] = atlas.getRegion(images[i]);
+            }
+        }
+
+
+        /**
+            Finds the frame shown at the specified animation time,
+            which is before totalDuration, starting from the
+            specified frame.
+        */
+        int findFrame(long animTime, int start) {
+            int low = start;
+            if (endTimes.length <= BINARY_SEARCH_FRAMES) {
+                while (animTime > endTimes[low]) {
+                    low++;
+                }
+                return low;
+            }
+
+            // the first frame that ends at or after animTime
+            int high = endTimes.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (animTime > endTimes[mid]) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            return low;
         }
     }
 }
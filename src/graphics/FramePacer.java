@@ -0,0 +1,259 @@
+package graphics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+    The FramePacer class holds a steady frame rate. Each call to
+    waitForNextFrame() waits until the next frame is due, first
+    sleeping, then spinning for the last stretch, since
+    Thread.sleep() often wakes up late. The pacer watches how late
+    sleep() actually wakes up and keeps its spin time just long
+    enough to cover that, so it uses little CPU on systems with a
+    precise sleep and stays on time on systems without one.
+    <p>
+    Frames are due on a fixed schedule, so a frame that finishes
+    early doesn't push the next ones earlier. A frame that finishes
+    after its deadline is counted as missed, and if the pacer falls
+    a whole frame behind, the schedule starts again from the
+    current time instead of rushing to catch up.
+    <p>
+    With vsync on, showing a frame already waits for the display's
+    vertical refresh, so the schedule follows the time each frame
+    was actually shown, and the pacer only waits when showing the
+    frame didn't.
+    <p>
+    A FramePacer is used by only one thread.
+*/
+public class FramePacer {
+
+    // shortest and longest time spent spinning before a deadline
+    private static final long MIN_SPIN_NANOS =
+        TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long MAX_SPIN_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(4);
+
+    // how quickly the spin time follows the measured oversleep:
+    // it jumps up to a late wake-up at once, and decays by
+    // 1/SPIN_DECAY of the difference on each early one
+    private static final int SPIN_DECAY = 16;
+
+    // with vsync, a frame that took at least this fraction of the
+    // frame period has already been held back by the display
+    private static final float VSYNC_TOLERANCE = 0.8f;
+
+    private int targetFps;
+    private long framePeriod;
+    private boolean vsync;
+    private long spinNanos = MAX_SPIN_NANOS;
+    private long nextDeadline;
+    private long lastFrameTime;
+
+    private long numFrames;
+    private long numMissed;
+    private long totalLateNanos;
+    private long worstLateNanos;
+
+    /**
+        Creates a new FramePacer with the specified target frame
+        rate. A rate of 0 means "don't limit the frame rate".
+    */
+    public FramePacer(int targetFps) {
+        setTargetFps(targetFps);
+    }
+
+
+    /**
+        Sets the number of frames per second to hold. Use 0 to
+        draw frames as fast as possible.
+    */
+    public void setTargetFps(int targetFps) {
+        this.targetFps = Math.max(targetFps, 0);
+        framePeriod = (this.targetFps > 0) ?
+            1000000000L / this.targetFps : 0;
+        nextDeadline = 0;
+    }
+
+
+    /**
+        Gets the number of frames per second to hold, or 0 if the
+        frame rate isn't limited.
+    */
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+
+    /**
+        Gets the length of one frame, in nanoseconds, or 0 if the
+        frame rate isn't limited.
+    */
+    public long getFramePeriod() {
+        return framePeriod;
+    }
+
+
+    /**
+        Sets whether showing a frame waits for the display's
+        vertical refresh.
+    */
+    public void setVsync(boolean vsync) {
+        this.vsync = vsync;
+        nextDeadline = 0;
+    }
+
+
+    /**
+        Checks whether showing a frame waits for the display's
+        vertical refresh.
+    */
+    public boolean isVsync() {
+        return vsync;
+    }
+
+
+    /**
+        Waits until the next frame is due, and records whether
+        this frame met its deadline. Call this once per frame,
+        after the frame has been shown.
+    */
+    public void waitForNextFrame() {
+        long now = System.nanoTime();
+        numFrames++;
+        if (framePeriod <= 0) {
+            lastFrameTime = now;
+            return;
+        }
+
+        if (nextDeadline == 0) {
+            // first frame: start the schedule now
+            nextDeadline = now + framePeriod;
+        }
+        else if (vsync && now - lastFrameTime >=
+            framePeriod * VSYNC_TOLERANCE)
+        {
+            // showing the frame waited for the refresh already;
+            // follow the display rather than our own schedule
+            if (now - lastFrameTime > framePeriod +
+                framePeriod / 2)
+            {
+                recordMissed(now - lastFrameTime - framePeriod);
+            }
+            nextDeadline = now + framePeriod;
+            lastFrameTime = now;
+            return;
+        }
+        else if (now > nextDeadline) {
+            recordMissed(now - nextDeadline);
+            if (now - nextDeadline >= framePeriod) {
+                // too far behind to catch up
+                nextDeadline = now;
+            }
+        }
+
+        sleepUntil(nextDeadline);
+        lastFrameTime = System.nanoTime();
+        nextDeadline += framePeriod;
+    }
+
+
+    /**
+        Sleeps, then spins, until the specified System.nanoTime().
+        Returns right away if that time has passed.
+    */
+    public void sleepUntil(long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > spinNanos) {
+            long sleepNanos = remaining - spinNanos;
+            long sleepStart = System.nanoTime();
+            try {
+                Thread.sleep(sleepNanos / 1000000,
+                    (int)(sleepNanos % 1000000));
+            }
+            catch (InterruptedException ex) { }
+            adjustSpin(System.nanoTime() - sleepStart - sleepNanos);
+        }
+        while (System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+
+
+    /**
+        Adjusts the spin time after a sleep that woke up the
+        specified number of nanoseconds late.
+    */
+    private void adjustSpin(long oversleep) {
+        long target = oversleep + MIN_SPIN_NANOS;
+        if (target > spinNanos) {
+            spinNanos = target;
+        }
+        else {
+            spinNanos -= (spinNanos - target) / SPIN_DECAY;
+        }
+        spinNanos = Math.max(MIN_SPIN_NANOS,
+            Math.min(spinNanos, MAX_SPIN_NANOS));
+    }
+
+
+    private void recordMissed(long lateNanos) {
+        numMissed++;
+        totalLateNanos += lateNanos;
+        worstLateNanos = Math.max(worstLateNanos, lateNanos);
+    }
+
+
+    /**
+        Gets the number of frames paced since the statistics were
+        last reset.
+    */
+    public long getNumFrames() {
+        return numFrames;
+    }
+
+
+    /**
+        Gets the number of frames that finished after their
+        deadline since the statistics were last reset.
+    */
+    public long getNumMissed() {
+        return numMissed;
+    }
+
+
+    /**
+        Gets the average time missed frames were late by, in
+        nanoseconds.
+    */
+    public long getAverageLateNanos() {
+        return (numMissed > 0) ? totalLateNanos / numMissed : 0;
+    }
+
+
+    /**
+        Gets the longest time a frame was late by, in
+        nanoseconds.
+    */
+    public long getWorstLateNanos() {
+        return worstLateNanos;
+    }
+
+
+    /**
+        Gets how long the pacer currently spins before each
+        deadline, in nanoseconds.
+    */
+    public long getSpinNanos() {
+        return spinNanos;
+    }
+
+
+    /**
+        Resets the frame and missed-deadline statistics.
+    */
+    public void resetStats() {
+        numFrames = 0;
+        numMissed = 0;
+        totalLateNanos = 0;
+        worstLateNanos = 0;
+    }
+}
@@ -8,14 +8,30 @@ import javax.swing.JFrame;
 
 /**
     The ScreenManager class manages initializing and displaying
-    full screen graphics modes.
+    full screen graphics modes. It also paces the frames it shows
+    with a FramePacer, which by default holds the display's
+    refresh rate.
 */
 public class ScreenManager {
 
+    /**
+        The refresh rate assumed when the display doesn't report
+        one.
+    */
+    public static final int DEFAULT_REFRESH_RATE = 60;
+
+    /**
+        Target frame rate meaning "match the display's refresh
+        rate".
+    */
+    public static final int MATCH_REFRESH_RATE = -1;
+
     private GraphicsDevice device;
     // fsem
     private static final int NUM_BUFFERS = 2;	// used for page flipping
     private BufferStrategy bufferStrategy;
+    private FramePacer framePacer;
+    private int targetFps = MATCH_REFRESH_RATE;
 
     /**
         Creates a new ScreenManager object.
@@ -24,6 +40,7 @@ public class ScreenManager {
         GraphicsEnvironment environment =
             GraphicsEnvironment.getLocalGraphicsEnvironment();
         device = environment.getDefaultScreenDevice();
+        framePacer = new FramePacer(getRefreshRate());
     }
 
 
@@ -65,6 +82,59 @@ public class ScreenManager {
     }
 
 
+    /**
+        Returns the refresh rate of the current display mode, or
+        DEFAULT_REFRESH_RATE if the display doesn't report it.
+    */
+    public int getRefreshRate() {
+        DisplayMode mode = device.getDisplayMode();
+        if (mode == null ||
+            mode.getRefreshRate() == DisplayMode.REFRESH_RATE_UNKNOWN)
+        {
+            return DEFAULT_REFRESH_RATE;
+        }
+        return mode.getRefreshRate();
+    }
+
+
+    /**
+        Returns the FramePacer that update() uses to pace frames.
+    */
+    public FramePacer getFramePacer() {
+        return framePacer;
+    }
+
+
+    /**
+        Sets the number of frames to show per second. Use 0 to
+        show frames as fast as possible, or MATCH_REFRESH_RATE to
+        match the display's refresh rate.
+    */
+    public void setTargetFps(int targetFps) {
+        this.targetFps = targetFps;
+        framePacer.setTargetFps((targetFps == MATCH_REFRESH_RATE) ?
+            getRefreshRate() : targetFps);
+        updateVsync();
+    }
+
+
+    /**
+        Tells the FramePacer whether showing a frame waits for the
+        vertical refresh: when page flipping in full screen mode
+        at the display's refresh rate.
+    */
+    private void updateVsync() {
+        boolean vsync = false;
+        Window window = device.getFullScreenWindow();
+        if (window != null && window.getBufferStrategy() != null) {
+            vsync = window.getBufferStrategy().getCapabilities().
+                isPageFlipping() &&
+                framePacer.getTargetFps() == getRefreshRate();
+        }
+        framePacer.setVsync(vsync);
+    }
+
+
     /**
         Determines if two display modes "match". Two display
         modes match if they have the same resolution, bit depth,
@@ -147,6 +217,8 @@ public class ScreenManager {
             // ignore
         }
 
+        // the display mode may have a different refresh rate
+        setTargetFps(targetFps);
 
     }
 
@@ -171,7 +243,8 @@ public class ScreenManager {
 
 
     /**
-        Updates the display.
+        Updates the display, then waits until the next frame is
+        due.
     */
     public void update() {
         Window window = device.getFullScreenWindow();
@@ -184,6 +257,8 @@ public class ScreenManager {
         // Sync the display on some systems.
         // (on Linux, this fixes event queue problems)
         Toolkit.getDefaultToolkit().sync();
+
+        framePacer.waitForNextFrame();
     }
 
 
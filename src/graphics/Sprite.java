@@ -11,11 +11,28 @@ public class Sprite {
     // velocity (pixels per millisecond)
     protected float dx;
     protected float dy;
+    // position at the previous simulation tick (pixels)
+    protected float prevX;
+    protected float prevY;
     public int newHeight;
     public int newWidth;
     public char tileID;
     public int worth;
 
+    // the SpriteGrid this Sprite is in (if any), its cell in
+    // that grid, and the order it was added to the grid
+    SpriteGrid grid;
+    int cellX;
+    int cellY;
+    long gridOrder;
+
+    // the SpriteList this Sprite is in (if any), its index and
+    // handle in that list, and whether it's waiting to be removed
+    SpriteList list;
+    int listIndex = -1;
+    long handle = SpriteList.NO_HANDLE;
+    boolean removePending;
+
     /**
         Creates a new Sprite object with the specified Animation.
     */
@@ -28,8 +45,8 @@ public class Sprite {
         on the velocity.
     */
     public void update(long elapsedTime) {
-        x += dx * elapsedTime;
-        y += dy * elapsedTime;
+        setX(x + dx * elapsedTime);
+        setY(y + dy * elapsedTime);
         anim.update(elapsedTime);
     }
 
@@ -52,6 +69,7 @@ public class Sprite {
     */
     public void setX(float x) {
         this.x = x;
+        positionChanged();
     }
 
     /**
@@ -59,6 +77,34 @@ public class Sprite {
     */
     public void setY(float y) {
         this.y = y;
+        positionChanged();
+    }
+
+    /**
+        Tells the SpriteGrid this Sprite is in (if any) that the
+        Sprite may have moved. Subclasses that keep their
+        position somewhere else must call this when it changes.
+    */
+    protected void positionChanged() {
+        if (grid != null) {
+            grid.update(this);
+        }
+    }
+
+    /**
+        Gets the handle of this Sprite in the SpriteList it's
+        in, or SpriteList.NO_HANDLE if it isn't in a list.
+    */
+    public long getHandle() {
+        return handle;
+    }
+
+    /**
+        Checks if this Sprite is waiting to be removed from its
+        SpriteList at the end of the tick.
+    */
+    public boolean isRemovePending() {
+        return removePending;
     }
 
     /**
@@ -77,6 +123,33 @@ public class Sprite {
         return anim.getImage().getHeight(null);
     }
 
+    /**
+        Remembers the current position as the position at the
+        previous simulation tick. Call this before each tick
+        moves the Sprite, and after placing it somewhere new.
+    */
+    public void savePosition() {
+        prevX = getX();
+        prevY = getY();
+    }
+
+    /**
+        Gets this Sprite's x position interpolated between the
+        previous tick and the current one. An alpha of 0 gives
+        the previous position, 1 gives the current position.
+    */
+    public float getInterpolatedX(float alpha) {
+        return prevX + (getX() - prevX) * alpha;
+    }
+
+    /**
+        Gets this Sprite's y position interpolated between the
+        previous tick and the current one.
+    */
+    public float getInterpolatedY(float alpha) {
+        return prevY + (getY() - prevY) * alpha;
+    }
+
     /**
         Gets the horizontal velocity of this Sprite in pixels
         per millisecond.
@@ -116,6 +189,24 @@ public class Sprite {
         return anim.getImage();
     }
 
+    /**
+        Gets this Sprite's current image as a TextureAtlas
+        Region, or null if the image isn't in an atlas.
+    */
+    public TextureAtlas.Region getRegion() {
+        return anim.getRegion();
+    }
+
+    /**
+        Resets this Sprite so it can be reused: stops it and
+        starts its Animation over. Doesn't change its position.
+    */
+    public void reset() {
+        dx = 0;
+        dy = 0;
+        anim.start();
+    }
+
     /**
         Clones this Sprite. Does not clone position or velocity
         info.
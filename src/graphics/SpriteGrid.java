@@ -0,0 +1,408 @@
+package graphics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+    The SpriteGrid class is a spatial hash of Sprites, so that
+    finding the Sprites near a location doesn't mean looking at
+    every Sprite. The world is split into square cells (usually
+    the same size as a tile) and each Sprite is kept in the cell
+    that contains its upper-left corner.
+    <p>
+    Sprites in a grid tell the grid whenever setX() or setY()
+    moves them, and move to another cell only when they cross a
+    cell boundary. Cells that become empty are deleted, so the
+    grid only holds the cells that have Sprites in them.
+*/
+public class SpriteGrid {
+
+    /**
+        Decides whether a Sprite found near another Sprite is a
+        match.
+    */
+    public interface Matcher {
+        public boolean matches(Sprite sprite, Sprite other);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // number of deleted cells kept for reuse
+    private static final int MAX_FREE_CELLS = 64;
+
+    // sorts Sprites by the order they were added to a grid
+    private static final Comparator<Sprite> ORDER =
+        new Comparator<Sprite>() {
+            public int compare(Sprite a, Sprite b) {
+                return Long.compare(a.gridOrder, b.gridOrder);
+            }
+        };
+
+    private final int cellBits;
+
+    // open-addressing hash table of cells, keyed by cell location
+    private long[] keys;
+    private Cell[] cells;
+    private int numCells;
+    private Cell[] freeCells = new Cell[MAX_FREE_CELLS];
+    private int numFreeCells;
+
+    // largest sprite in the grid, used to know how many
+    // neighboring cells a query has to look at. when a sprite
+    // that big is removed, they're worked out again by the next
+    // query.
+    private int maxWidth;
+    private int maxHeight;
+    private boolean maxSizeChanged;
+
+    private long nextOrder;
+
+    /**
+        Creates a new SpriteGrid with cells that are
+        2^cellBits pixels across.
+    */
+    public SpriteGrid(int cellBits) {
+        this.cellBits = cellBits;
+        keys = new long[INITIAL_CAPACITY];
+        cells = new Cell[INITIAL_CAPACITY];
+    }
+
+
+    /**
+        Adds a Sprite to this grid. Sprites are remembered in the
+        order they were added, which is the order in which
+        findFirst() prefers them.
+    */
+    public void add(Sprite sprite) {
+        if (sprite.grid != null) {
+            sprite.grid.remove(sprite);
+        }
+        sprite.grid = this;
+        sprite.gridOrder = nextOrder++;
+        sprite.cellX = toCell(sprite.getX());
+        sprite.cellY = toCell(sprite.getY());
+        getCell(sprite.cellX, sprite.cellY, true).add(sprite);
+        if (maxSizeChanged) {
+            updateMaxSize();
+        }
+        maxWidth = Math.max(maxWidth, sprite.getNewWidth());
+        maxHeight = Math.max(maxHeight, sprite.getNewHeight());
+    }
+
+
+    /**
+        Removes a Sprite from this grid. Does nothing if the
+        Sprite isn't in this grid.
+    */
+    public void remove(Sprite sprite) {
+        if (sprite.grid != this) {
+            return;
+        }
+        removeFromCell(sprite);
+        sprite.grid = null;
+        if (sprite.getNewWidth() >= maxWidth ||
+            sprite.getNewHeight() >= maxHeight)
+        {
+            maxSizeChanged = true;
+        }
+    }
+
+
+    /**
+        Called when a Sprite in this grid has moved. Moves the
+        Sprite to another cell if it crossed a cell boundary.
+    */
+    void update(Sprite sprite) {
+        int cellX = toCell(sprite.getX());
+        int cellY = toCell(sprite.getY());
+        if (cellX != sprite.cellX || cellY != sprite.cellY) {
+            removeFromCell(sprite);
+            sprite.cellX = cellX;
+            sprite.cellY = cellY;
+            getCell(cellX, cellY, true).add(sprite);
+        }
+    }
+
+
+    /**
+        Finds the Sprite that matches the specified Sprite out of
+        the Sprites whose bounds (using getNewWidth() and
+        getNewHeight()) could overlap it. If more than one Sprite
+        matches, the one that was added to the grid first is
+        returned. Returns null if no Sprite matches.
+    */
+    public Sprite findFirst(Sprite sprite, Matcher matcher) {
+        if (maxSizeChanged) {
+            updateMaxSize();
+        }
+        int x = Math.round(sprite.getX());
+        int y = Math.round(sprite.getY());
+        int fromCellX = (x - maxWidth) >> cellBits;
+        int fromCellY = (y - maxHeight) >> cellBits;
+        int toCellX = (x + sprite.getNewWidth()) >> cellBits;
+        int toCellY = (y + sprite.getNewHeight()) >> cellBits;
+
+        Sprite found = null;
+        for (int cx=fromCellX; cx<=toCellX; cx++) {
+            for (int cy=fromCellY; cy<=toCellY; cy++) {
+                Cell cell = getCell(cx, cy, false);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i=0; i<cell.size; i++) {
+                    Sprite other = cell.sprites[i];
+                    if ((found == null ||
+                        other.gridOrder < found.gridOrder) &&
+                        matcher.matches(sprite, other))
+                    {
+                        found = other;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+
+    /**
+        Finds the Sprites that could overlap the specified
+        rectangle (in pixels), in the order they were added to the
+        grid. As many as fit are put in the result array, and the
+        number found is returned; if that's more than the length
+        of the array, call again with a bigger array.
+        <p>
+        Sprites are found by the cell of their upper-left corner
+        and the size of the largest Sprite in the grid, so some
+        Sprites found may be just outside the rectangle.
+    */
+    public int findAll(int x, int y, int width, int height,
+        Sprite[] result)
+    {
+        if (maxSizeChanged) {
+            updateMaxSize();
+        }
+        int fromCellX = (x - maxWidth) >> cellBits;
+        int fromCellY = (y - maxHeight) >> cellBits;
+        int toCellX = (x + width) >> cellBits;
+        int toCellY = (y + height) >> cellBits;
+
+        int count = 0;
+        for (int cx=fromCellX; cx<=toCellX; cx++) {
+            for (int cy=fromCellY; cy<=toCellY; cy++) {
+                Cell cell = getCell(cx, cy, false);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i=0; i<cell.size; i++) {
+                    if (count < result.length) {
+                        result[count] = cell.sprites[i];
+                    }
+                    count++;
+                }
+            }
+        }
+
+        if (count <= result.length) {
+            Arrays.sort(result, 0, count, ORDER);
+        }
+        return count;
+    }
+
+
+    /**
+        Gets the number of cells in this grid, all of which have
+        at least one Sprite.
+    */
+    public int getNumCells() {
+        return numCells;
+    }
+
+
+    /**
+        Works out the size of the largest Sprite in the grid
+        again, after one that big was removed.
+    */
+    private void updateMaxSize() {
+        maxWidth = 0;
+        maxHeight = 0;
+        for (int i=0; i<cells.length; i++) {
+            Cell cell = cells[i];
+            if (cell == null) {
+                continue;
+            }
+            for (int j=0; j<cell.size; j++) {
+                maxWidth = Math.max(maxWidth,
+                    cell.sprites[j].getNewWidth());
+                maxHeight = Math.max(maxHeight,
+                    cell.sprites[j].getNewHeight());
+            }
+        }
+        maxSizeChanged = false;
+    }
+
+
+    /**
+        Removes a Sprite from the cell it's in, deleting the cell
+        if that leaves it empty.
+    */
+    private void removeFromCell(Sprite sprite) {
+        int i = findSlot(toKey(sprite.cellX, sprite.cellY));
+        if (i == -1) {
+            return;
+        }
+        Cell cell = cells[i];
+        cell.remove(sprite);
+        if (cell.size == 0) {
+            deleteSlot(i);
+            if (numFreeCells < freeCells.length) {
+                freeCells[numFreeCells++] = cell;
+            }
+        }
+    }
+
+
+    private int toCell(float pixels) {
+        return Math.round(pixels) >> cellBits;
+    }
+
+
+    private static long toKey(int cellX, int cellY) {
+        return ((long)cellX << 32) | (cellY & 0xffffffffL);
+    }
+
+
+    /**
+        Gets the cell at the specified location. If there's no
+        such cell, it's created if create is true, otherwise null
+        is returned.
+    */
+    private Cell getCell(int cellX, int cellY, boolean create) {
+        long key = toKey(cellX, cellY);
+        int mask = cells.length - 1;
+        int i = hash(key) & mask;
+        while (cells[i] != null) {
+            if (keys[i] == key) {
+                return cells[i];
+            }
+            i = (i + 1) & mask;
+        }
+        if (!create) {
+            return null;
+        }
+
+        // keep the table at most half full
+        if ((numCells + 1) * 2 > cells.length) {
+            grow();
+            return getCell(cellX, cellY, true);
+        }
+        keys[i] = key;
+        cells[i] = (numFreeCells > 0) ?
+            freeCells[--numFreeCells] : new Cell();
+        freeCells[numFreeCells] = null;
+        numCells++;
+        return cells[i];
+    }
+
+
+    /**
+        Gets the slot of the cell with the specified key, or -1
+        if there's no such cell.
+    */
+    private int findSlot(long key) {
+        int mask = cells.length - 1;
+        int i = hash(key) & mask;
+        while (cells[i] != null) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+
+    /**
+        Deletes the cell in the specified slot. The cells after
+        it in the probe sequence are shifted back into the hole
+        where their own probe sequence allows it, so lookups
+        never stop early and no tombstones are needed.
+    */
+    private void deleteSlot(int hole) {
+        int mask = cells.length - 1;
+        int i = (hole + 1) & mask;
+        while (cells[i] != null) {
+            int home = hash(keys[i]) & mask;
+            // the cell can move into the hole if its home slot
+            // isn't cyclically between the hole and its slot
+            boolean stays = (hole <= i) ?
+                (hole < home && home <= i) :
+                (hole < home || home <= i);
+            if (!stays) {
+                keys[hole] = keys[i];
+                cells[hole] = cells[i];
+                hole = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[hole] = 0;
+        cells[hole] = null;
+        numCells--;
+    }
+
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Cell[] oldCells = cells;
+        keys = new long[oldKeys.length * 2];
+        cells = new Cell[oldCells.length * 2];
+        int mask = cells.length - 1;
+        for (int j=0; j<oldCells.length; j++) {
+            if (oldCells[j] != null) {
+                int i = hash(oldKeys[j]) & mask;
+                while (cells[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                cells[i] = oldCells[j];
+            }
+        }
+    }
+
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+
+    /**
+        A cell holds the Sprites whose upper-left corner is inside
+        it, in no particular order.
+    */
+    private static class Cell {
+
+        Sprite[] sprites = new Sprite[4];
+        int size;
+
+        void add(Sprite sprite) {
+            if (size == sprites.length) {
+                Sprite[] newSprites = new Sprite[size * 2];
+                System.arraycopy(sprites, 0, newSprites, 0, size);
+                sprites = newSprites;
+            }
+            sprites[size++] = sprite;
+        }
+
+        void remove(Sprite sprite) {
+            for (int i=0; i<size; i++) {
+                if (sprites[i] == sprite) {
+                    // move the last sprite into the hole
+                    size--;
+                    sprites[i] = sprites[size];
+                    sprites[size] = null;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package graphics;
+
+/**
+    The SpriteList class is an unordered list of Sprites kept in
+    a dense array, so it can be walked with get(i) without
+    allocating an Iterator, and any Sprite can be removed in
+    constant time by moving the last Sprite into its place.
+    <p>
+    Since indexes change when Sprites are removed, each Sprite
+    added to the list is also given a handle. A handle stays valid
+    until its Sprite is removed; after that, find(handle) returns
+    null, even if the Sprite (or its slot) is reused.
+    <p>
+    Sprites can't be removed while the list is being walked by
+    index, so removeLater() marks a Sprite for removal and
+    flushRemovals() removes all the marked Sprites, usually at the
+    end of a tick.
+*/
+public class SpriteList {
+
+    /**
+        A handle that never refers to a Sprite.
+    */
+    public static final long NO_HANDLE = 0;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Sprite[] sprites;
+    private int size;
+
+    // for each handle slot, its generation and either the index
+    // of its Sprite or, for free slots, the next free slot
+    private int[] generations;
+    private int[] slotIndexes;
+    private int numSlots;
+    private int freeSlot = -1;
+
+    private Sprite[] pending;
+    private int numPending;
+
+    /**
+        Creates a new, empty SpriteList.
+    */
+    public SpriteList() {
+        sprites = new Sprite[INITIAL_CAPACITY];
+        generations = new int[INITIAL_CAPACITY];
+        slotIndexes = new int[INITIAL_CAPACITY];
+        pending = new Sprite[16];
+    }
+
+
+    /**
+        Gets the number of Sprites in this list, including
+        Sprites waiting to be removed.
+    */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+        Gets the Sprite at the specified index, from 0 to
+        size()-1.
+    */
+    public Sprite get(int index) {
+        return sprites[index];
+    }
+
+
+    /**
+        Gets the Sprite with the specified handle, or null if that
+        Sprite has been removed from this list.
+    */
+    public Sprite find(long handle) {
+        int slot = (int)handle;
+        int generation = (int)(handle >>> 32);
+        if (slot < 0 || slot >= numSlots ||
+            generations[slot] != generation)
+        {
+            return null;
+        }
+        return sprites[slotIndexes[slot]];
+    }
+
+
+    /**
+        Adds a Sprite to this list, removing it from any other
+        list first. Returns the Sprite's new handle.
+    */
+    public long add(Sprite sprite) {
+        if (sprite.list != null) {
+            sprite.list.remove(sprite);
+        }
+        if (size == sprites.length) {
+            Sprite[] newSprites = new Sprite[size * 2];
+            System.arraycopy(sprites, 0, newSprites, 0, size);
+            sprites = newSprites;
+        }
+
+        // take a free slot, or make a new one
+        int slot = freeSlot;
+        if (slot != -1) {
+            freeSlot = slotIndexes[slot];
+        }
+        else {
+            if (numSlots == generations.length) {
+                generations = grow(generations);
+                slotIndexes = grow(slotIndexes);
+            }
+            slot = numSlots++;
+            generations[slot] = 1;
+        }
+
+        int index = size++;
+        sprites[index] = sprite;
+        slotIndexes[slot] = index;
+        sprite.list = this;
+        sprite.listIndex = index;
+        sprite.handle = ((long)generations[slot] << 32) | slot;
+        sprite.removePending = false;
+        return sprite.handle;
+    }
+
+
+    /**
+        Removes a Sprite from this list right away. Does nothing
+        if the Sprite isn't in this list. Don't call this while
+        walking the list by index; use removeLater() instead.
+    */
+    public void remove(Sprite sprite) {
+        if (sprite.list != this) {
+            return;
+        }
+        int index = sprite.listIndex;
+        int slot = (int)sprite.handle;
+
+        // move the last sprite into the hole
+        int last = --size;
+        if (index != last) {
+            Sprite moved = sprites[last];
+            sprites[index] = moved;
+            moved.listIndex = index;
+            slotIndexes[(int)moved.handle] = index;
+        }
+        sprites[last] = null;
+
+        // retire the handle
+        generations[slot]++;
+        slotIndexes[slot] = freeSlot;
+        freeSlot = slot;
+
+        sprite.list = null;
+        sprite.listIndex = -1;
+        sprite.handle = NO_HANDLE;
+        sprite.removePending = false;
+    }
+
+
+    /**
+        Marks a Sprite to be removed by the next call to
+        flushRemovals(). The Sprite stays in the list (and its
+        handle stays valid) until then.
+    */
+    public void removeLater(Sprite sprite) {
+        if (sprite.list != this || sprite.removePending) {
+            return;
+        }
+        if (numPending == pending.length) {
+            Sprite[] newPending = new Sprite[numPending * 2];
+            System.arraycopy(pending, 0, newPending, 0, numPending);
+            pending = newPending;
+        }
+        sprite.removePending = true;
+        pending[numPending++] = sprite;
+    }
+
+
+    /**
+        Gets the number of Sprites marked by removeLater() that
+        haven't been removed yet.
+    */
+    public int getNumPending() {
+        return numPending;
+    }
+
+
+    /**
+        Gets a Sprite marked by removeLater(), from 0 to
+        getNumPending()-1.
+    */
+    public Sprite getPending(int index) {
+        return pending[index];
+    }
+
+
+    /**
+        Removes every Sprite marked by removeLater().
+    */
+    public void flushRemovals() {
+        for (int i=0; i<numPending; i++) {
+            Sprite sprite = pending[i];
+            pending[i] = null;
+            // skip sprites already removed some other way
+            if (sprite.list == this && sprite.removePending) {
+                remove(sprite);
+            }
+        }
+        numPending = 0;
+    }
+
+
+    private static int[] grow(int[] array) {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
@@ -0,0 +1,192 @@
+package graphics;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+    The TextureAtlas class packs many small images (tiles and
+    animation frames) into a few large page images, so drawing
+    them doesn't mean switching between hundreds of small
+    surfaces. Each packed image becomes a Region of a page, which
+    is drawn with the source-rectangle version of drawImage().
+    <p>
+    Images are added with add() and packed all at once with
+    pack(), tallest first, in rows ("shelves") across each page.
+    Images that are too big for a page are left out, and
+    getRegion() returns null for them.
+*/
+public class TextureAtlas {
+
+    /**
+        The default width and height of a page.
+    */
+    public static final int DEFAULT_PAGE_SIZE = 2048;
+
+    // space between images, so filtering doesn't bleed
+    private static final int PADDING = 1;
+
+    /**
+        A Region is a rectangle of a page holding one image.
+    */
+    public static class Region {
+
+        public final Image page;
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+
+        public Region(Image page, int x, int y, int width,
+            int height)
+        {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+            Draws this Region with its upper-left corner at the
+            specified location.
+        */
+        public void draw(Graphics g, int x, int y) {
+            g.drawImage(page,
+                x, y, x + width, y + height,
+                this.x, this.y, this.x + width, this.y + height,
+                null);
+        }
+    }
+
+    private GraphicsConfiguration gc;
+    private int pageSize;
+    private ArrayList<Image> pages = new ArrayList<Image>();
+    private ArrayList<Image> pending = new ArrayList<Image>();
+    private IdentityHashMap<Image, Region> regions =
+        new IdentityHashMap<Image, Region>();
+
+    /**
+        Creates a new, empty TextureAtlas with pages compatible
+        with the specified GraphicsConfiguration. If gc is null,
+        pages are plain ARGB BufferedImages.
+    */
+    public TextureAtlas(GraphicsConfiguration gc) {
+        this(gc, DEFAULT_PAGE_SIZE);
+    }
+
+
+    /**
+        Creates a new, empty TextureAtlas with pages of the
+        specified size.
+    */
+    public TextureAtlas(GraphicsConfiguration gc, int pageSize) {
+        this.gc = gc;
+        this.pageSize = pageSize;
+    }
+
+
+    /**
+        Adds an image to be packed by the next call to pack().
+        Images that are already in the atlas, and images that
+        haven't loaded, are ignored.
+    */
+    public void add(Image image) {
+        if (image == null || regions.containsKey(image) ||
+            pending.contains(image) ||
+            image.getWidth(null) <= 0 || image.getHeight(null) <= 0)
+        {
+            return;
+        }
+        pending.add(image);
+    }
+
+
+    /**
+        Packs all the images added since the last call into new
+        pages.
+    */
+    public void pack() {
+        Image[] images = pending.toArray(new Image[pending.size()]);
+        pending.clear();
+
+        // tallest first wastes the least space on each shelf
+        Arrays.sort(images, new Comparator<Image>() {
+            public int compare(Image a, Image b) {
+                return b.getHeight(null) - a.getHeight(null);
+            }
+        });
+
+        Image page = null;
+        Graphics2D g = null;
+        int shelfX = 0;
+        int shelfY = 0;
+        int shelfHeight = 0;
+        for (int i=0; i<images.length; i++) {
+            Image image = images[i];
+            int width = image.getWidth(null);
+            int height = image.getHeight(null);
+            if (width > pageSize || height > pageSize) {
+                continue;
+            }
+
+            // start a new shelf, or a new page
+            if (page != null && shelfX + width > pageSize) {
+                shelfX = 0;
+                shelfY += shelfHeight + PADDING;
+                shelfHeight = 0;
+            }
+            if (page == null || shelfY + height > pageSize) {
+                if (g != null) {
+                    g.dispose();
+                }
+                page = createPage();
+                pages.add(page);
+                g = (Graphics2D)page.getGraphics();
+                g.setComposite(AlphaComposite.Src);
+                shelfX = 0;
+                shelfY = 0;
+                shelfHeight = 0;
+            }
+
+            g.drawImage(image, shelfX, shelfY, null);
+            regions.put(image,
+                new Region(page, shelfX, shelfY, width, height));
+            shelfX += width + PADDING;
+            shelfHeight = Math.max(shelfHeight, height);
+        }
+        if (g != null) {
+            g.dispose();
+        }
+    }
+
+
+    /**
+        Gets the Region holding the specified image, or null if
+        the image isn't packed in this atlas.
+    */
+    public Region getRegion(Image image) {
+        return regions.get(image);
+    }
+
+
+    /**
+        Gets the number of page images.
+    */
+    public int getNumPages() {
+        return pages.size();
+    }
+
+
+    private Image createPage() {
+        if (gc != null) {
+            return gc.createCompatibleImage(pageSize, pageSize,
+                Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(pageSize, pageSize,
+            BufferedImage.TYPE_INT_ARGB);
+    }
+}
@@ -4,6 +4,7 @@ import java.awt.*;
 import java.util.concurrent.TimeUnit;
 import javax.swing.ImageIcon;
 
+import graphics.FramePacer;
 import graphics.ScreenManager;
 
 /**
@@ -13,12 +14,34 @@ import graphics.ScreenManager;
 public abstract class GameCore {
 
     public static final int FONT_SIZE = 24;
-    private long elapsedTime;
+
+    /**
+        Default number of simulation ticks per second.
+    */
+    public static final int DEFAULT_TICK_RATE = 60;
+
+    /**
+        Default number of frames drawn per second: the display's
+        refresh rate.
+    */
+    public static final int DEFAULT_TARGET_FPS =
+        ScreenManager.MATCH_REFRESH_RATE;
+
+    // longest stretch of real time simulated in a single frame,
+    // so a long hitch doesn't trigger a spiral of catch-up ticks
+    private static final long MAX_FRAME_NANOS =
+        TimeUnit.MILLISECONDS.toNanos(250);
+
     private long startTime;
     public long currTime;
     public long currTimeInSeconds;
     public int secondsPassed = 0;
-    private int tick = 0;
+
+    private long tickMillis;
+    private int targetFps;
+    private long simulatedTime;
+    private float interpolation;
+    private long updateNanos;
 
     private static final DisplayMode POSSIBLE_MODES[] = {
         new DisplayMode(800, 600, 16, 0),
@@ -32,10 +55,114 @@ public abstract class GameCore {
         new DisplayMode(1024, 768, 24, 0),
     };
 
-    private boolean isRunning;
+    private volatile boolean isRunning;
+    private boolean useRenderThread;
+    private Thread renderThread;
+    private FramePacer tickPacer = new FramePacer(0);
     protected ScreenManager screen;
 
 
+    /**
+        Creates a new GameCore running at the default tick rate
+        and target frame rate.
+    */
+    public GameCore() {
+        setTickRate(DEFAULT_TICK_RATE);
+        setTargetFps(DEFAULT_TARGET_FPS);
+    }
+
+
+    /**
+        Sets the number of simulation ticks per second. Since
+        update() takes whole milliseconds, the tick length is
+        rounded down to a whole number of milliseconds (60 ticks
+        per second gives 16ms ticks).
+    */
+    public void setTickRate(int ticksPerSecond) {
+        if (ticksPerSecond <= 0 || ticksPerSecond > 1000) {
+            throw new IllegalArgumentException(
+                "Bad tick rate: " + ticksPerSecond);
+        }
+        tickMillis = 1000 / ticksPerSecond;
+    }
+
+
+    /**
+        Gets the length of one simulation tick, in milliseconds.
+    */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+
+    /**
+        Sets the number of frames to draw per second. The
+        screen's FramePacer waits between frames to hold this
+        rate. Use 0 to draw frames as fast as possible, or
+        ScreenManager.MATCH_REFRESH_RATE to match the display's
+        refresh rate.
+    */
+    public void setTargetFps(int targetFps) {
+        this.targetFps = Math.max(targetFps,
+            ScreenManager.MATCH_REFRESH_RATE);
+        if (screen != null) {
+            screen.setTargetFps(this.targetFps);
+        }
+    }
+
+
+    /**
+        Gets the target number of frames drawn per second, as set
+        by setTargetFps().
+    */
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+
+    /**
+        Gets how far the current frame is between the previous
+        simulation tick and the next one, from 0 to 1. Renderers
+        use it to interpolate sprite positions.
+    */
+    public float getInterpolation() {
+        return interpolation;
+    }
+
+
+    /**
+        Gets the time, in nanoseconds, spent running ticks in the
+        last pass of the game loop.
+    */
+    public long getUpdateNanos() {
+        return updateNanos;
+    }
+
+
+    /**
+        Sets whether frames are drawn on a separate render
+        thread, so drawing and showing a frame can overlap with
+        the simulation. Must be set before the game loop starts.
+        <p>
+        With a render thread, draw() is called on that thread, so
+        subclasses must take what draw() needs from the game in
+        publishFrame() (which runs on the simulation thread) and
+        draw only from that copy.
+    */
+    public void setRenderThread(boolean useRenderThread) {
+        this.useRenderThread = useRenderThread;
+    }
+
+
+    /**
+        Checks whether frames are drawn on a separate render
+        thread.
+    */
+    public boolean isRenderThread() {
+        return useRenderThread;
+    }
+
+
     /**
         Signals the game loop that it's time to quit
     */
@@ -53,6 +180,7 @@ public abstract class GameCore {
             gameLoop();
         }
         finally {
+            stopRenderThread();
             screen.restoreScreen();
             lazilyExit();
         }
@@ -90,6 +218,7 @@ public abstract class GameCore {
         screen = new ScreenManager();
         DisplayMode displayMode =
             screen.findFirstCompatibleMode(POSSIBLE_MODES);
+        screen.setTargetFps(targetFps);
         screen.setFullScreen(displayMode);
 
         Window window = screen.getFullScreenWindow();
@@ -107,35 +236,119 @@ public abstract class GameCore {
 
 
     /**
-        Runs through the game loop until stop() is called.
+        Runs through the game loop until stop() is called. The
+        simulation is stepped in fixed ticks of getTickMillis()
+        milliseconds, independent of the frame rate, and each
+        frame is drawn with the interpolation between the last
+        two ticks.
+        <p>
+        Without a render thread, each pass runs the ticks that
+        are due, then publishes and draws a frame; showing the
+        frame waits until the next frame is due. With a render
+        thread, each pass runs the ticks that are due, publishes a
+        frame for the render thread, and waits for the next tick.
     */
     public void gameLoop() {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        long accumulator = 0;
+        long lastTime = System.nanoTime();
         startTime = System.currentTimeMillis();
         currTime = startTime;
 
+        if (useRenderThread) {
+            startRenderThread();
+        }
+
         while (isRunning) {
-            this.elapsedTime =
-                System.currentTimeMillis() - currTime;
-            currTime += elapsedTime;
-            currTimeInSeconds = TimeUnit.MILLISECONDS.toSeconds(currTime);
-            tick++;
-            if(tick % 60 == 0) secondsPassed++;
+            long frameStart = System.nanoTime();
+            accumulator += Math.min(frameStart - lastTime,
+                MAX_FRAME_NANOS);
+            lastTime = frameStart;
 
             // update
-            update(elapsedTime);
+            while (accumulator >= tickNanos && isRunning) {
+                runTick();
+                accumulator -= tickNanos;
+            }
+            updateNanos = System.nanoTime() - frameStart;
+            interpolation = (float)accumulator / tickNanos;
+            publishFrame();
+
+            if (useRenderThread) {
+                // wait for the next tick
+                tickPacer.sleepUntil(frameStart + tickNanos -
+                    accumulator);
+            }
+            else {
+                drawFrame();
+            }
+        }
+    }
+
+
+    /**
+        Draws a frame and shows it on the screen, then waits
+        until the next frame is due.
+    */
+    private void drawFrame() {
+        Graphics2D g = screen.getGraphics();
+        draw(g);
+        g.dispose();
+        screen.update();
+    }
 
-            // draw the screen
-            Graphics2D g = screen.getGraphics();
-            draw(g);
-            g.dispose();
-            screen.update();
 
-            // don't take a nap! run as fast as possible
-            /*try {
-                Thread.sleep(20);
+    private void startRenderThread() {
+        renderThread = new Thread("Render") {
+            public void run() {
+                while (isRunning) {
+                    drawFrame();
+                }
             }
-            catch (InterruptedException ex) { }*/
+        };
+        renderThread.start();
+    }
+
+
+    private void stopRenderThread() {
+        if (renderThread == null) {
+            return;
+        }
+        isRunning = false;
+        try {
+            renderThread.join();
         }
+        catch (InterruptedException ex) { }
+        renderThread = null;
+    }
+
+
+    /**
+        Called by the game loop on the simulation thread after
+        the ticks for a frame have run, before the frame is drawn
+        (or, with a render thread, for the render thread to draw
+        whenever it's ready). Subclasses that use a render thread
+        should copy what draw() needs here. Does nothing by
+        default.
+    */
+    protected void publishFrame() {
+        // do nothing
+    }
+
+
+    /**
+        Runs a single simulation tick of getTickMillis()
+        milliseconds. The game loop calls this as needed; it can
+        also be called directly to step the game without a
+        display.
+    */
+    public void runTick() {
+        update(tickMillis);
+        simulatedTime += tickMillis;
+        currTime = startTime + simulatedTime;
+        currTimeInSeconds = TimeUnit.MILLISECONDS.toSeconds(currTime);
+        secondsPassed = (int)TimeUnit.MILLISECONDS.toSeconds(
+            simulatedTime);
     }
 
 
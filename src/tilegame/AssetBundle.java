@@ -0,0 +1,559 @@
+package tilegame;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import sound.Sound;
+
+/**
+    An AssetBundle is a single file holding every image of the
+    game as ready-to-use pixels (including the mirrored and
+    flipped copies), and every sound's samples in the playback
+    format. The bundle is mapped into memory with
+    FileChannel.map(), and images and sounds are made by copying
+    their bytes out of the mapping, with no decoding.
+    <p>
+    Images are named by their ImageCache key, such as
+    "fly/0.png" or "fly/0.png#mirror"; sounds by their path, such
+    as "sounds/prize.wav".
+    <p>
+    The bundle is built offline by running this class's main()
+    from the game's directory. It lists the files it was made
+    from with their last modified times and lengths. In dev mode
+    (with the system property DEV_PROPERTY set to true), each of
+    those files is checked once when the bundle is opened, and
+    the entries made from files that have changed are ignored,
+    so edited images and sounds are loaded from their files until
+    the bundle is built again. Otherwise the bundle is trusted
+    without looking at the files, so it can be shipped without
+    them.
+    <p>
+    Sounds are converted to the playback format when they are
+    packed. A sound that can't be is decoded to signed PCM in its
+    own sample rate and channels instead, and getSound() returns
+    null for it, just as loading its file can't play it.
+    <p>
+    The file format (all numbers big-endian) is a header of MAGIC,
+    VERSION, the number of source files and the number of entries,
+    then the source files (path length as a short, UTF-8 path,
+    and the last modified time and length as longs), then one
+    index entry per image or sound (name length as a short, UTF-8
+    name, type byte, two ints describing the data, the data's
+    offset as a long, its length as an int, and the index of its
+    source file as an int), then the data. Image data is the
+    width * height premultiplied ARGB ints, starting on a 4-byte
+    boundary; an image's ints are its width and height. Sound data
+    is the raw samples; a sound's ints are its sample rate, and
+    its channels, sample size and flags packed as described at
+    packSoundFormat().
+*/
+public class AssetBundle {
+
+    public static final int MAGIC = 0x54474142; // "TGAB"
+    public static final int VERSION = 3;
+
+    /**
+        The bundle ResourceManager looks for, relative to the
+        game's directory.
+    */
+    public static final String DEFAULT_FILE = "assets.bundle";
+
+    /**
+        The system property that turns on dev mode, where
+        open() checks the bundle's source files for changes.
+    */
+    public static final String DEV_PROPERTY = "tilegame.dev";
+
+    private static final byte TYPE_IMAGE = 0;
+    private static final byte TYPE_SOUND = 1;
+
+    private static final int SOUND_SIGNED = 1;
+    private static final int SOUND_BIG_ENDIAN = 2;
+
+    private MappedByteBuffer data;
+    private HashMap<String, Entry> entries = new HashMap<String, Entry>();
+    private int numStale;
+
+
+    /**
+        Packs the images and sounds of the game in the current
+        directory into a bundle, by default DEFAULT_FILE.
+    */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        File file = new File(args.length > 0 ? args[0] : DEFAULT_FILE);
+        long startTime = System.currentTimeMillis();
+        Packer packer = new Packer();
+        packer.addImages();
+        packer.addSounds(new File("sounds"), GameManager.PLAYBACK_FORMAT);
+        packer.write(file);
+        System.out.println("Wrote " + packer.getNumEntries() +
+            " entries (" + (file.length() / 1024) + "KB) to " + file +
+            " in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+
+    /**
+        Maps the specified bundle file into memory and reads its
+        index, trusting it without checking its source files.
+        @throws IOException if the file can't be read or isn't a
+        bundle of this version.
+    */
+    public AssetBundle(File file) throws IOException {
+        this(file, false);
+    }
+
+
+    /**
+        Maps the specified bundle file into memory and reads its
+        index. If checkSources is true, the entries made from
+        source files that exist and have changed since the bundle
+        was built are ignored; each source file is looked at once.
+        @throws IOException if the file can't be read or isn't a
+        bundle of this version.
+    */
+    public AssetBundle(File file, boolean checkSources)
+        throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+        }
+        finally {
+            // the mapping stays valid after the file is closed
+            raf.close();
+        }
+
+        if (data.remaining() < 16 || data.getInt() != MAGIC ||
+            data.getInt() != VERSION)
+        {
+            throw new IOException("Not a version " + VERSION +
+                " asset bundle: " + file);
+        }
+        int numSources = data.getInt();
+        int numEntries = data.getInt();
+        boolean[] stale = new boolean[numSources];
+        for (int i=0; i<numSources; i++) {
+            String path = readString(data);
+            long modified = data.getLong();
+            long length = data.getLong();
+            if (checkSources) {
+                // a missing file doesn't count as changed
+                File source = new File(path);
+                long sourceModified = source.lastModified();
+                stale[i] = (sourceModified != 0 &&
+                    (sourceModified != modified ||
+                    source.length() != length));
+            }
+        }
+        for (int i=0; i<numEntries; i++) {
+            String name = readString(data);
+            Entry entry = new Entry();
+            entry.type = data.get();
+            entry.a = data.getInt();
+            entry.b = data.getInt();
+            entry.offset = (int)data.getLong();
+            entry.length = data.getInt();
+            entry.source = data.getInt();
+            if (stale[entry.source]) {
+                numStale++;
+            }
+            else {
+                entries.put(name, entry);
+            }
+        }
+        if (numStale > 0) {
+            System.out.println("AssetBundle: ignoring " + numStale +
+                " entries whose files have changed; rebuild " + file);
+        }
+    }
+
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getShort()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    /**
+        Gets the number of entries ignored because their source
+        files have changed since the bundle was built.
+    */
+    public int getNumStale() {
+        return numStale;
+    }
+
+
+    /**
+        Opens the specified bundle, or returns null if it doesn't
+        exist or can't be read. Its source files are checked for
+        changes only in dev mode.
+    */
+    public static AssetBundle open(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return new AssetBundle(file, Boolean.getBoolean(DEV_PROPERTY));
+        }
+        catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+
+    /**
+        Checks if the bundle has an image with the specified
+        ImageCache key.
+    */
+    public boolean hasImage(String key) {
+        Entry entry = entries.get(key);
+        return (entry != null && entry.type == TYPE_IMAGE);
+    }
+
+
+    /**
+        Gets the image with the specified ImageCache key, or null
+        if the bundle doesn't have it. Each call makes a new
+        premultiplied ARGB image. Safe to call from any thread.
+    */
+    public Image getImage(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.type != TYPE_IMAGE) {
+            return null;
+        }
+        BufferedImage image = new BufferedImage(entry.a, entry.b,
+            BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] pixels =
+            ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(entry.offset);
+        buffer.asIntBuffer().get(pixels);
+        return image;
+    }
+
+
+    /**
+        Gets the sound with the specified path, or null if the
+        bundle doesn't have it or its samples aren't in the
+        specified format.
+    */
+    public Sound getSound(String path, AudioFormat format) {
+        Entry entry = entries.get(path);
+        if (entry == null || entry.type != TYPE_SOUND ||
+            !unpackSoundFormat(entry.a, entry.b).matches(format))
+        {
+            return null;
+        }
+        byte[] samples = new byte[entry.length];
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(entry.offset);
+        buffer.get(samples);
+        return new Sound(samples);
+    }
+
+
+    /**
+        Packs a sound's channels, sample size, and whether it is
+        signed and big-endian into one int: channels << 16 |
+        sampleSizeInBits << 8 | flags.
+    */
+    private static int packSoundFormat(AudioFormat format) {
+        int flags = 0;
+        if (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED) {
+            flags |= SOUND_SIGNED;
+        }
+        if (format.isBigEndian()) {
+            flags |= SOUND_BIG_ENDIAN;
+        }
+        return (format.getChannels() << 16) |
+            (format.getSampleSizeInBits() << 8) | flags;
+    }
+
+
+    private static AudioFormat unpackSoundFormat(int sampleRate,
+        int packed)
+    {
+        return new AudioFormat(sampleRate, (packed >> 8) & 0xff,
+            packed >> 16, (packed & SOUND_SIGNED) != 0,
+            (packed & SOUND_BIG_ENDIAN) != 0);
+    }
+
+
+    private static class Entry {
+        byte type;
+        int a;
+        int b;
+        int offset;
+        int length;
+        int source;
+    }
+
+
+    /**
+        The Packer collects images and sounds and writes them as
+        a bundle.
+    */
+    private static class Packer {
+
+        private ArrayList<byte[]> names = new ArrayList<byte[]>();
+        private ArrayList<Entry> entries = new ArrayList<Entry>();
+        private ArrayList<byte[]> contents = new ArrayList<byte[]>();
+        // the source files, and the index of each by path
+        private ArrayList<File> sources = new ArrayList<File>();
+        private HashMap<String, Integer> sourceIndexes =
+            new HashMap<String, Integer>();
+
+        public int getNumEntries() {
+            return names.size();
+        }
+
+
+        /**
+            Adds every image the game loads: everything a
+            ResourceManager loads at startup (including mirrored
+            and flipped copies), plus every other PNG under
+            images/, such as the backgrounds.
+        */
+        public void addImages() {
+            ResourceManager resourceManager =
+                new ResourceManager(null, null);
+            addPngs(resourceManager, new File("images"), "");
+
+            ImageCache cache = resourceManager.getImageCache();
+            String[] keys = cache.getKeys();
+            Arrays.sort(keys);
+            for (int i=0; i<keys.length; i++) {
+                Image image = cache.getImage(keys[i]);
+                if (image != null) {
+                    addImage(keys[i], image);
+                }
+            }
+        }
+
+
+        private void addPngs(ResourceManager resourceManager,
+            File dir, String path)
+        {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files);
+            for (int i=0; i<files.length; i++) {
+                String name = path + files[i].getName();
+                if (files[i].isDirectory()) {
+                    addPngs(resourceManager, files[i], name + "/");
+                }
+                else if (name.endsWith(".png")) {
+                    resourceManager.loadImage(name);
+                }
+            }
+        }
+
+
+        private void addImage(String key, Image image) {
+            int width = image.getWidth(null);
+            int height = image.getHeight(null);
+            BufferedImage pixels = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = pixels.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+
+            int[] argb =
+                ((DataBufferInt)pixels.getRaster().getDataBuffer()).getData();
+            ByteBuffer bytes = ByteBuffer.allocate(argb.length * 4);
+            bytes.asIntBuffer().put(argb);
+            add(key, TYPE_IMAGE, width, height, bytes.array());
+        }
+
+
+        /**
+            Adds every .wav and .au file under the specified
+            directory, converted to the specified format, or
+            decoded to signed PCM if they can't be.
+            @throws IOException if a sound can't be read or
+            decoded.
+        */
+        public void addSounds(File dir, AudioFormat format)
+            throws IOException
+        {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return;
+            }
+            Arrays.sort(files);
+            for (int i=0; i<files.length; i++) {
+                String name = files[i].getPath().replace(
+                    File.separatorChar, '/');
+                if (files[i].isDirectory()) {
+                    addSounds(files[i], format);
+                }
+                else if (name.endsWith(".wav") || name.endsWith(".au")) {
+                    addSound(name, files[i], format);
+                }
+            }
+        }
+
+
+        private void addSound(String name, File file,
+            AudioFormat format) throws IOException
+        {
+            AudioInputStream source;
+            try {
+                source = AudioSystem.getAudioInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            }
+            catch (UnsupportedAudioFileException ex) {
+                throw new IOException("Can't read " + name, ex);
+            }
+            if (!AudioSystem.isConversionSupported(format,
+                source.getFormat()))
+            {
+                // keep the sound in its own rate and channels
+                AudioFormat sourceFormat = source.getFormat();
+                format = new AudioFormat(sourceFormat.getSampleRate(),
+                    16, sourceFormat.getChannels(), true, false);
+                if (!AudioSystem.isConversionSupported(format,
+                    sourceFormat))
+                {
+                    throw new IOException("Can't decode " + name +
+                        " (" + sourceFormat + ")");
+                }
+                System.out.println("Packing " + name + " as " + format +
+                    ": it can't be converted to the playback format");
+            }
+            AudioInputStream stream =
+                AudioSystem.getAudioInputStream(format, source);
+            ByteArrayOutputStream samples = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                samples.write(buffer, 0, count);
+            }
+            stream.close();
+            add(name, TYPE_SOUND, (int)format.getSampleRate(),
+                packSoundFormat(format), samples.toByteArray());
+        }
+
+
+        private void add(String name, byte type, int a, int b,
+            byte[] content)
+        {
+            Entry entry = new Entry();
+            entry.type = type;
+            entry.a = a;
+            entry.b = b;
+            entry.length = content.length;
+            entry.source = getSourceIndex(name, type);
+            names.add(name.getBytes(StandardCharsets.UTF_8));
+            entries.add(entry);
+            contents.add(content);
+        }
+
+
+        /**
+            Gets the index of the file an image or sound was made
+            from, adding it to the sources if it's new: the image's
+            file under images/ (for mirrors and flips too), or the
+            sound's path.
+        */
+        private int getSourceIndex(String name, byte type) {
+            String path = name;
+            if (type == TYPE_IMAGE) {
+                int transform = name.indexOf('#');
+                if (transform != -1) {
+                    name = name.substring(0, transform);
+                }
+                path = "images/" + name;
+            }
+            Integer index = sourceIndexes.get(path);
+            if (index == null) {
+                index = Integer.valueOf(sources.size());
+                sources.add(new File(path));
+                sourceIndexes.put(path, index);
+            }
+            return index.intValue();
+        }
+
+
+        public void write(File file) throws IOException {
+            // lay out the data after the sources and the index,
+            // 4-byte aligned
+            byte[][] paths = new byte[sources.size()][];
+            long offset = 16;
+            for (int i=0; i<sources.size(); i++) {
+                paths[i] = sources.get(i).getPath().replace(
+                    File.separatorChar, '/').getBytes(
+                    StandardCharsets.UTF_8);
+                offset += 2 + paths[i].length + 8 + 8;
+            }
+            for (int i=0; i<names.size(); i++) {
+                offset += 2 + names.get(i).length + 1 +
+                    4 + 4 + 8 + 4 + 4;
+            }
+            for (int i=0; i<entries.size(); i++) {
+                Entry entry = entries.get(i);
+                offset = (offset + 3) & ~3;
+                entry.offset = (int)offset;
+                offset += entry.length;
+            }
+
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sources.size());
+                out.writeInt(names.size());
+                for (int i=0; i<sources.size(); i++) {
+                    out.writeShort(paths[i].length);
+                    out.write(paths[i]);
+                    out.writeLong(sources.get(i).lastModified());
+                    out.writeLong(sources.get(i).length());
+                }
+                for (int i=0; i<names.size(); i++) {
+                    byte[] name = names.get(i);
+                    Entry entry = entries.get(i);
+                    out.writeShort(name.length);
+                    out.write(name);
+                    out.writeByte(entry.type);
+                    out.writeInt(entry.a);
+                    out.writeInt(entry.b);
+                    out.writeLong(entry.offset);
+                    out.writeInt(entry.length);
+                    out.writeInt(entry.source);
+                }
+                for (int i=0; i<entries.size(); i++) {
+                    Entry entry = entries.get(i);
+                    while (out.size() < entry.offset) {
+                        out.writeByte(0);
+                    }
+                    out.write(contents.get(i));
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+    }
+}
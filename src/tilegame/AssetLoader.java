@@ -0,0 +1,403 @@
+package tilegame;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+    The AssetLoader decodes images and derives mirrored and
+    flipped copies of them in parallel, on a pool with one thread
+    per processor. Each method returns CompletableFutures right
+    away; a mirror or flip is a task that runs as soon as the
+    image it's made from has been decoded, so work on different
+    images overlaps freely.
+    <p>
+    Images loaded by path go through an ImageCache, so each file
+    is decoded once, and each mirror or flip of it made once. If
+    an AssetBundle is set, images found in it (mirrors and flips
+    included) are copied out of the bundle instead of being
+    decoded or transformed.
+    <p>
+    The work is counted in stages (decoding, mirroring, flipping
+    and copying from the bundle), each with its number of tasks submitted and
+    finished and the time spent on them, for progress displays
+    and for printReport().
+*/
+public class AssetLoader {
+
+    public static final int STAGE_DECODE = 0;
+    public static final int STAGE_MIRROR = 1;
+    public static final int STAGE_FLIP = 2;
+    public static final int STAGE_BUNDLE = 3;
+    public static final int NUM_STAGES = 4;
+
+    private static final String[] STAGE_NAMES = {
+        "decode", "mirror", "flip", "bundle"
+    };
+
+    // idle pool threads go away after this long
+    private static final long KEEP_ALIVE_SECONDS = 1;
+
+    private GraphicsConfiguration gc;
+    private ThreadPoolExecutor executor;
+    private ImageCache cache = new ImageCache();
+    private AssetBundle bundle;
+    private long startTime;
+
+    private AtomicInteger[] numTasks = new AtomicInteger[NUM_STAGES];
+    private AtomicInteger[] numDone = new AtomicInteger[NUM_STAGES];
+    private AtomicLong[] stageNanos = new AtomicLong[NUM_STAGES];
+
+    /**
+        Creates a new AssetLoader. Mirrored and flipped images
+        are compatible with the specified GraphicsConfiguration,
+        or plain ARGB images if gc is null.
+    */
+    public AssetLoader(GraphicsConfiguration gc) {
+        this.gc = gc;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(numThreads, numThreads,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private AtomicInteger count = new AtomicInteger();
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task,
+                        "AssetLoader-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        for (int i=0; i<NUM_STAGES; i++) {
+            numTasks[i] = new AtomicInteger();
+            numDone[i] = new AtomicInteger();
+            stageNanos[i] = new AtomicLong();
+        }
+        startTime = System.nanoTime();
+    }
+
+
+    /**
+        Sets the AssetBundle to take images from, or null to
+        decode every image from its file.
+    */
+    public void setBundle(AssetBundle bundle) {
+        this.bundle = bundle;
+    }
+
+
+    /**
+        Checks if an image exists in the bundle or in the images/
+        directory.
+    */
+    public boolean exists(String name) {
+        return (bundle != null && bundle.hasImage(name)) ||
+            new File("images/" + name).exists();
+    }
+
+
+    /**
+        Gets the ImageCache holding the images loaded by path.
+    */
+    public ImageCache getCache() {
+        return cache;
+    }
+
+
+    /**
+        Decodes an image from the images/ directory. The future's
+        image is null if the file can't be read.
+    */
+    public CompletableFuture<Image> loadImage(String name) {
+        return loadImage(name, ImageCache.IDENTITY);
+    }
+
+
+    /**
+        Gets an image from the images/ directory with the
+        specified ImageCache transform applied. A mirror is made
+        from the decoded image, and a flip from the decoded or
+        mirrored image, each of them loaded (or found in the
+        cache) first.
+    */
+    public CompletableFuture<Image> loadImage(final String name,
+        final int transform)
+    {
+        return cache.get(name, transform,
+            new Supplier<CompletableFuture<Image>>() {
+                public CompletableFuture<Image> get() {
+                    final String key = ImageCache.getKey(name, transform);
+                    if (bundle != null && bundle.hasImage(key)) {
+                        return CompletableFuture.completedFuture(
+                            timed(STAGE_BUNDLE, new Supplier<Image>() {
+                                public Image get() {
+                                    return bundle.getImage(key);
+                                }
+                            }).get());
+                    }
+                    else if (transform == ImageCache.IDENTITY) {
+                        return CompletableFuture.supplyAsync(
+                            timed(STAGE_DECODE, new Supplier<Image>() {
+                                public Image get() {
+                                    return decode(name);
+                                }
+                            }), executor);
+                    }
+                    else if ((transform & ImageCache.FLIP) != 0) {
+                        return transformImage(loadImage(name,
+                            transform & ~ImageCache.FLIP),
+                            STAGE_FLIP, 1, -1);
+                    }
+                    else {
+                        return transformImage(loadImage(name),
+                            STAGE_MIRROR, -1, 1);
+                    }
+                }
+            });
+    }
+
+
+    /**
+        Decodes the numbered images path + "0.png", path +
+        "1.png", and so on.
+    */
+    public List<CompletableFuture<Image>> loadImages(String path,
+        int num)
+    {
+        return loadImages(path, num, ImageCache.IDENTITY);
+    }
+
+
+    /**
+        Gets the numbered images path + "0.png", path + "1.png",
+        and so on, with the specified ImageCache transform
+        applied.
+    */
+    public List<CompletableFuture<Image>> loadImages(String path,
+        int num, int transform)
+    {
+        List<CompletableFuture<Image>> images =
+            new ArrayList<CompletableFuture<Image>>(num);
+        for (int i=0; i<num; i++) {
+            images.add(loadImage(path + i + ".png", transform));
+        }
+        return images;
+    }
+
+
+    /**
+        Waits for each of the specified images, and returns them.
+    */
+    public static Image[] getImages(
+        List<CompletableFuture<Image>> images)
+    {
+        Image[] result = new Image[images.size()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = images.get(i).join();
+        }
+        return result;
+    }
+
+
+    private CompletableFuture<Image> transformImage(
+        CompletableFuture<Image> image, int stage,
+        final float x, final float y)
+    {
+        return image.thenApplyAsync(timed(stage,
+            new Function<Image, Image>() {
+                public Image apply(Image image) {
+                    return getScaledImage(image, x, y);
+                }
+            }), executor);
+    }
+
+
+    /**
+        Wraps a task so it's counted and timed in the specified
+        stage.
+    */
+    private Supplier<Image> timed(final int stage,
+        final Supplier<Image> task)
+    {
+        numTasks[stage].incrementAndGet();
+        return new Supplier<Image>() {
+            public Image get() {
+                long time = System.nanoTime();
+                try {
+                    return task.get();
+                }
+                finally {
+                    stageNanos[stage].addAndGet(
+                        System.nanoTime() - time);
+                    numDone[stage].incrementAndGet();
+                }
+            }
+        };
+    }
+
+
+    private Function<Image, Image> timed(final int stage,
+        final Function<Image, Image> task)
+    {
+        numTasks[stage].incrementAndGet();
+        return new Function<Image, Image>() {
+            public Image apply(Image arg) {
+                long time = System.nanoTime();
+                try {
+                    return task.apply(arg);
+                }
+                finally {
+                    stageNanos[stage].addAndGet(
+                        System.nanoTime() - time);
+                    numDone[stage].incrementAndGet();
+                }
+            }
+        };
+    }
+
+
+    private Image decode(String name) {
+        String filename = "images/" + name;
+        if (name.endsWith(".gif")) {
+            // ImageIcon keeps all the frames of animated GIFs
+            if (!new File(filename).exists()) {
+                System.out.println("Image file could not be opened: " +
+                    filename);
+                return null;
+            }
+            return new ImageIcon(filename).getImage();
+        }
+        try {
+            BufferedImage image = ImageIO.read(new File(filename));
+            if (image == null) {
+                System.out.println("Image file could not be decoded: " +
+                    filename);
+            }
+            return image;
+        }
+        catch (IOException ex) {
+            System.out.println("Image file could not be opened: " +
+                filename);
+            return null;
+        }
+    }
+
+
+    /**
+        Draws an image scaled by x and y (1 or -1) around its
+        center into a new transparent image.
+    */
+    private Image getScaledImage(Image image, float x, float y) {
+        if (image == null) {
+            return null;
+        }
+
+        // set up the transform
+        AffineTransform transform = new AffineTransform();
+        transform.scale(x, y);
+        transform.translate(
+            (x-1) * image.getWidth(null) / 2,
+            (y-1) * image.getHeight(null) / 2);
+
+        // create a transparent (not translucent) image
+        Image newImage = createImage(
+            image.getWidth(null),
+            image.getHeight(null),
+            Transparency.BITMASK);
+
+        // draw the transformed image
+        Graphics2D g = (Graphics2D)newImage.getGraphics();
+        g.drawImage(image, transform, null);
+        g.dispose();
+
+        return newImage;
+    }
+
+
+    /**
+        Creates an image compatible with the display, or a plain
+        ARGB image if there is no display.
+    */
+    private BufferedImage createImage(int w, int h,
+        int transparency)
+    {
+        if (gc != null) {
+            return gc.createCompatibleImage(w, h, transparency);
+        }
+        return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    }
+
+
+    /**
+        Gets the number of tasks submitted to a stage
+        (STAGE_DECODE, STAGE_MIRROR or STAGE_FLIP).
+    */
+    public int getNumTasks(int stage) {
+        return numTasks[stage].get();
+    }
+
+
+    /**
+        Gets the number of finished tasks in a stage.
+    */
+    public int getNumDone(int stage) {
+        return numDone[stage].get();
+    }
+
+
+    /**
+        Gets the total time, in nanoseconds, that the pool's
+        threads have spent on a stage.
+    */
+    public long getStageNanos(int stage) {
+        return stageNanos[stage].get();
+    }
+
+
+    /**
+        Gets the fraction of all submitted tasks that have
+        finished, from 0 to 1.
+    */
+    public float getProgress() {
+        int tasks = 0;
+        int done = 0;
+        for (int i=0; i<NUM_STAGES; i++) {
+            tasks += numTasks[i].get();
+            done += numDone[i].get();
+        }
+        return (tasks == 0) ? 1 : (float)done / tasks;
+    }
+
+
+    /**
+        Prints the tasks and time of each stage, and the time
+        since this loader was created.
+    */
+    public void printReport() {
+        long totalNanos = 0;
+        for (int i=0; i<NUM_STAGES; i++) {
+            System.out.println("AssetLoader " + STAGE_NAMES[i] + ": " +
+                numDone[i].get() + "/" + numTasks[i].get() +
+                " images, " +
+                TimeUnit.NANOSECONDS.toMillis(stageNanos[i].get()) +
+                "ms");
+            totalNanos += stageNanos[i].get();
+        }
+        System.out.println("AssetLoader: " +
+            TimeUnit.NANOSECONDS.toMillis(totalNanos) + "ms of work in " +
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) +
+            "ms on " + executor.getMaximumPoolSize() + " threads");
+        cache.printReport();
+    }
+}
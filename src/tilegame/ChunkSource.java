@@ -0,0 +1,41 @@
+package tilegame;
+
+import java.io.IOException;
+
+/**
+    A ChunkSource loads the tiles (and Sprites) of a square
+    section of a TileMap on demand, so the map doesn't have to be
+    kept in memory all at once. MapFile reads text maps;
+    CompiledMap reads maps compiled by MapCompiler.
+*/
+public interface ChunkSource {
+
+    /**
+        Gets the width of the map, in tiles.
+    */
+    public int getWidth();
+
+
+    /**
+        Gets the height of the map, in tiles.
+    */
+    public int getHeight();
+
+
+    /**
+        Gets the number of baddies in the map that have to be
+        killed before the goal can be reached.
+    */
+    public int getNumBaddies();
+
+
+    /**
+        Loads the tiles in the square of the specified size whose
+        upper-left tile is (tileX, tileY) into the map, using
+        setTile(). If spawnSprites is true, the Sprites in that
+        square are added to the map too.
+    */
+    public void loadChunk(TileMap map, int tileX, int tileY,
+        int size, boolean spawnSprites) throws IOException;
+
+}
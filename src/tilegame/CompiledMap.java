@@ -0,0 +1,199 @@
+package tilegame;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+    A CompiledMap is a ChunkSource that loads a map compiled by
+    MapCompiler. The file is mapped into memory, and loading a
+    chunk copies tiles straight out of the mapping, with no text
+    to parse; opening the map only reads its header.
+    <p>
+    The format (all numbers big-endian) is:
+    <ul>
+    <li>a header: MAGIC, VERSION, the width and height in tiles,
+    the number of baddies, the number of spawns, and the chunk
+    bits the spawn table is indexed by (all ints).
+    <li>the offset from the start of the file of the tiles of
+    each row in each column of chunks, row by row (height times
+    chunks across ints).
+    <li>the spawn table index: for each chunk, the index of its
+    first spawn, plus the total number of spawns at the end
+    (chunks + 1 ints).
+    <li>the spawns, ordered by chunk: a type byte (the map
+    character) and the tile x and y as ints.
+    <li>the tiles of each row, run-length encoded as pairs of
+    bytes: the length of the run (1 to 255), and the tile id
+    (0 for an empty tile, or 1 plus the tile's index: 1 for A, 2
+    for B, and so on). Runs don't cross the edges of chunk
+    columns, so loading a chunk starts at its own column instead
+    of the start of the row.
+    </ul>
+*/
+public class CompiledMap implements ChunkSource {
+
+    public static final int MAGIC = 0x54474d50; // "TGMP"
+    public static final int VERSION = 2;
+
+    /**
+        Compiled maps end with this instead of ".txt".
+    */
+    public static final String EXTENSION = ".bin";
+
+    static final int HEADER_SIZE = 7 * 4;
+    static final int SPAWN_SIZE = 1 + 4 + 4;
+
+    private ByteBuffer data;
+    private ResourceManager resourceManager;
+    private int width;
+    private int height;
+    private int numBaddies;
+    private int numSpawns;
+    private int chunkBits;
+    private int chunksAcross;
+    private int rowsOffset;
+    private int spawnIndexOffset;
+    private int spawnsOffset;
+
+    /**
+        Opens the specified compiled map. Tiles and Sprites are
+        created from the host images and Sprites in the
+        specified ResourceManager.
+        @throws IOException if the file can't be read or isn't a
+        compiled map of this version.
+    */
+    public CompiledMap(File file, ResourceManager resourceManager)
+        throws IOException
+    {
+        this.resourceManager = resourceManager;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+        }
+        finally {
+            // the mapping stays valid after the file is closed
+            raf.close();
+        }
+
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC ||
+            data.getInt(4) != VERSION)
+        {
+            throw new IOException("Not a version " + VERSION +
+                " compiled map: " + file);
+        }
+        width = data.getInt(8);
+        height = data.getInt(12);
+        numBaddies = data.getInt(16);
+        numSpawns = data.getInt(20);
+        chunkBits = data.getInt(24);
+        chunksAcross = getNumChunks(width, chunkBits);
+        rowsOffset = HEADER_SIZE;
+        spawnIndexOffset = rowsOffset + height * chunksAcross * 4;
+        spawnsOffset = spawnIndexOffset + (chunksAcross *
+            getNumChunks(height, chunkBits) + 1) * 4;
+    }
+
+
+    /**
+        Gets the name of the compiled version of a text map file.
+    */
+    public static String getCompiledName(String textName) {
+        if (textName.endsWith(".txt")) {
+            textName = textName.substring(0, textName.length() - 4);
+        }
+        return textName + EXTENSION;
+    }
+
+
+    static int getNumChunks(int tiles, int chunkBits) {
+        return (tiles + (1 << chunkBits) - 1) >> chunkBits;
+    }
+
+
+    public int getWidth() {
+        return width;
+    }
+
+
+    public int getHeight() {
+        return height;
+    }
+
+
+    public int getNumBaddies() {
+        return numBaddies;
+    }
+
+
+    /**
+        Loads a chunk. Only absolute reads are made from the
+        mapping, so chunks can be loaded from any thread.
+    */
+    public void loadChunk(TileMap map, int tileX, int tileY,
+        int size, boolean spawnSprites)
+    {
+        int toX = Math.min(tileX + size, width);
+        int toY = Math.min(tileY + size, height);
+        int column = tileX >> chunkBits;
+        for (int y=tileY; y<toY; y++) {
+            int offset = data.getInt(rowsOffset +
+                (y * chunksAcross + column) * 4);
+            // walk the row's runs from the start of the chunk
+            // column up to the right edge of the chunk, setting the
+            // tiles of the runs that overlap it
+            int x = column << chunkBits;
+            while (x < toX) {
+                int run = data.get(offset) & 0xff;
+                int id = data.get(offset + 1) & 0xff;
+                offset += 2;
+                int from = Math.max(x, tileX);
+                int to = Math.min(x + run, toX);
+                if (id != 0) {
+                    for (int i=from; i<to; i++) {
+                        resourceManager.setTile(map, i, y, id - 1);
+                    }
+                }
+                x += run;
+            }
+        }
+
+        if (spawnSprites) {
+            spawn(map, tileX, tileY, toX, toY, size);
+        }
+    }
+
+
+    /**
+        Spawns the sprites in the specified rectangle of tiles.
+        If the rectangle is a whole chunk of the size the spawn
+        table was built for, only that chunk's spawns are looked
+        at.
+    */
+    private void spawn(TileMap map, int tileX, int tileY,
+        int toX, int toY, int size)
+    {
+        int first = 0;
+        int last = numSpawns;
+        int mask = (1 << chunkBits) - 1;
+        if (size == (1 << chunkBits) && (tileX & mask) == 0 &&
+            (tileY & mask) == 0)
+        {
+            int chunk = (tileY >> chunkBits) * chunksAcross +
+                (tileX >> chunkBits);
+            first = data.getInt(spawnIndexOffset + chunk * 4);
+            last = data.getInt(spawnIndexOffset + chunk * 4 + 4);
+        }
+        for (int i=first; i<last; i++) {
+            int offset = spawnsOffset + i * SPAWN_SIZE;
+            int x = data.getInt(offset + 1);
+            int y = data.getInt(offset + 5);
+            if (x >= tileX && x < toX && y >= tileY && y < toY) {
+                resourceManager.spawnSprite(map,
+                    data.get(offset) & 0xff, x, y);
+            }
+        }
+    }
+}
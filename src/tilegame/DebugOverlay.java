@@ -0,0 +1,277 @@
+package tilegame;
+
+import java.awt.*;
+
+/**
+    The DebugOverlay shows the player's state and rolling graphs
+    of frame time, update time, render time, sprite count and heap
+    allocation rate.
+    <p>
+    It is built so that turning it on doesn't change what it
+    measures: samples go into fixed ring buffers every frame
+    (whether or not the overlay is shown, so the graphs are full
+    as soon as it's turned on), text is formatted into reusable
+    char buffers, and graphs are drawn from reusable coordinate
+    arrays over a cached background image (filling a translucent
+    rectangle directly allocates on every call). Nothing is
+    allocated per frame.
+*/
+public class DebugOverlay {
+
+    private static final Font FONT =
+        new Font("Monospaced", Font.PLAIN, 16);
+    private static final int LINE_HEIGHT = 20;
+
+    // number of frames in each graph
+    private static final int HISTORY = 120;
+    private static final int GRAPH_WIDTH = HISTORY * 2;
+    private static final int GRAPH_HEIGHT = 40;
+
+    private static final Color GRAPH_BACKGROUND =
+        new Color(0, 0, 0, 128);
+
+    public static final int GRAPH_FRAME = 0;
+    public static final int GRAPH_UPDATE = 1;
+    public static final int GRAPH_RENDER = 2;
+    public static final int GRAPH_SPRITES = 3;
+    public static final int GRAPH_ALLOCATION = 4;
+    private static final int NUM_GRAPHS = 5;
+
+    private static final String[] GRAPH_LABELS = {
+        "frame ms ", "update ms ", "render ms ", "sprites ",
+        "alloc MB/s "
+    };
+
+    private static final int[] GRAPH_DECIMALS = { 2, 2, 2, 0, 1 };
+
+    // smallest top of each graph's scale; graphs grow to fit
+    // larger values
+    private static final float[] GRAPH_MIN_SCALE = {
+        1000 / 30f, 1000 / 60f, 1000 / 60f, 64, 64
+    };
+
+    private static final Color[] GRAPH_COLORS = {
+        Color.WHITE, Color.GREEN, Color.ORANGE, Color.CYAN,
+        Color.MAGENTA
+    };
+
+    // ring buffers of samples, one row per graph
+    private float[][] samples = new float[NUM_GRAPHS][HISTORY];
+    private int next;
+    private int count;
+
+    private long lastFrameTime;
+    private long lastUsedMemory;
+    private float lastAllocationRate;
+
+    private char[] line = new char[64];
+    private int lineLength;
+    private int[] xPoints = new int[HISTORY];
+    private int[] yPoints = new int[HISTORY];
+    private Image graphBackground;
+    private GraphicsConfiguration gc;
+
+
+    /**
+        Records the samples for one frame. The frame time is the
+        time since the last call; the allocation rate is the
+        growth of the heap since the last call, skipping frames
+        where the garbage collector shrank it.
+    */
+    public void addFrame(RenderSnapshot s, long renderNanos) {
+        long now = System.nanoTime();
+        Runtime runtime = Runtime.getRuntime();
+        long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+        if (lastFrameTime != 0) {
+            long frameNanos = now - lastFrameTime;
+            long allocated = usedMemory - lastUsedMemory;
+            if (allocated >= 0 && frameNanos > 0) {
+                // bytes per nanosecond is 1000 MB per second
+                lastAllocationRate = allocated * 1000f / frameNanos;
+            }
+
+            samples[GRAPH_FRAME][next] = frameNanos / 1e6f;
+            samples[GRAPH_UPDATE][next] = s.updateNanos / 1e6f;
+            samples[GRAPH_RENDER][next] = renderNanos / 1e6f;
+            samples[GRAPH_SPRITES][next] = s.totalSprites;
+            samples[GRAPH_ALLOCATION][next] = lastAllocationRate;
+            next = (next + 1) % HISTORY;
+            count = Math.min(count + 1, HISTORY);
+        }
+        lastFrameTime = now;
+        lastUsedMemory = usedMemory;
+    }
+
+
+    /**
+        Draws the overlay for the specified snapshot with its
+        upper-left corner at the specified location.
+    */
+    public void draw(Graphics2D g, RenderSnapshot s, int x, int y) {
+        g.setFont(FONT);
+        g.setColor(Color.RED);
+
+        clear().append("x: ").append(s.playerX, 1);
+        y = drawLine(g, x, y);
+        clear().append("y: ").append(s.playerY, 1);
+        y = drawLine(g, x, y);
+        clear().append("xvel: ").append(s.playerVelocityX, 3);
+        y = drawLine(g, x, y);
+        clear().append("yvel: ").append(s.playerVelocityY, 3);
+        y = drawLine(g, x, y);
+        clear().append("onground: ").append(s.onGround);
+        y = drawLine(g, x, y);
+        clear().append("jumped: ").append(s.jumped);
+        y = drawLine(g, x, y);
+        clear().append("left: ").append(s.facingLeft);
+        y = drawLine(g, x, y);
+        clear().append("right: ").append(s.facingRight);
+        y = drawLine(g, x, y);
+        clear().append("state: ").append(s.playerState);
+        y = drawLine(g, x, y);
+
+        y += LINE_HEIGHT / 2;
+        for (int i=0; i<NUM_GRAPHS; i++) {
+            y = drawGraph(g, i, x, y);
+        }
+    }
+
+
+    /**
+        Draws one graph with its label and latest value, and
+        returns the y position below it.
+    */
+    private int drawGraph(Graphics2D g, int graph, int x, int y) {
+        float[] values = samples[graph];
+        float latest = (count > 0) ?
+            values[(next + HISTORY - 1) % HISTORY] : 0;
+        float scale = GRAPH_MIN_SCALE[graph];
+        for (int i=0; i<count; i++) {
+            scale = Math.max(scale, values[i]);
+        }
+
+        g.setColor(GRAPH_COLORS[graph]);
+        clear().append(GRAPH_LABELS[graph]).
+            append(latest, GRAPH_DECIMALS[graph]).append(" (max ").
+            append(scale, GRAPH_DECIMALS[graph]).append(")");
+        y = drawLine(g, x, y);
+
+        g.drawImage(getGraphBackground(g), x, y - LINE_HEIGHT + 4,
+            null);
+
+        // oldest sample on the left
+        int bottom = y - LINE_HEIGHT + 4 + GRAPH_HEIGHT;
+        int first = (next + HISTORY - count) % HISTORY;
+        for (int i=0; i<count; i++) {
+            float value = values[(first + i) % HISTORY];
+            xPoints[i] = x + (HISTORY - count + i) * GRAPH_WIDTH /
+                HISTORY;
+            yPoints[i] = bottom - Math.round(value / scale *
+                (GRAPH_HEIGHT - 1));
+        }
+        g.setColor(GRAPH_COLORS[graph]);
+        g.drawPolyline(xPoints, yPoints, count);
+        return y + GRAPH_HEIGHT + 4;
+    }
+
+
+    /**
+        Gets the translucent background of a graph, creating it
+        if the graphics configuration has changed.
+    */
+    private Image getGraphBackground(Graphics2D g) {
+        GraphicsConfiguration newGc = g.getDeviceConfiguration();
+        if (graphBackground == null || newGc != gc) {
+            if (graphBackground != null) {
+                graphBackground.flush();
+            }
+            gc = newGc;
+            graphBackground = gc.createCompatibleImage(GRAPH_WIDTH,
+                GRAPH_HEIGHT, Transparency.TRANSLUCENT);
+            Graphics2D imageG = (Graphics2D)graphBackground.getGraphics();
+            imageG.setColor(GRAPH_BACKGROUND);
+            imageG.fillRect(0, 0, GRAPH_WIDTH, GRAPH_HEIGHT);
+            imageG.dispose();
+        }
+        return graphBackground;
+    }
+
+
+    private int drawLine(Graphics2D g, int x, int y) {
+        g.drawChars(line, 0, lineLength, x, y);
+        return y + LINE_HEIGHT;
+    }
+
+
+    private DebugOverlay clear() {
+        lineLength = 0;
+        return this;
+    }
+
+
+    private DebugOverlay append(String s) {
+        int length = Math.min(s.length(), line.length - lineLength);
+        s.getChars(0, length, line, lineLength);
+        lineLength += length;
+        return this;
+    }
+
+
+    private DebugOverlay append(boolean b) {
+        return append(b ? "true" : "false");
+    }
+
+
+    private DebugOverlay append(long n) {
+        if (n < 0) {
+            append("-");
+            n = -n;
+        }
+        // write the digits backwards, then reverse them
+        int start = lineLength;
+        do {
+            if (lineLength == line.length) {
+                break;
+            }
+            line[lineLength++] = (char)('0' + n % 10);
+            n /= 10;
+        }
+        while (n > 0);
+        for (int i=start, j=lineLength-1; i<j; i++, j--) {
+            char c = line[i];
+            line[i] = line[j];
+            line[j] = c;
+        }
+        return this;
+    }
+
+
+    /**
+        Appends a number with the specified number of digits
+        after the decimal point.
+    */
+    private DebugOverlay append(float f, int decimals) {
+        if (Float.isNaN(f) || Float.isInfinite(f)) {
+            return append("?");
+        }
+        long pow = 1;
+        for (int i=0; i<decimals; i++) {
+            pow *= 10;
+        }
+        long fixed = Math.round((double)Math.abs(f) * pow);
+        if (f < 0 && fixed != 0) {
+            append("-");
+        }
+        append(fixed / pow);
+        if (decimals > 0) {
+            append(".");
+            // pad the fraction with leading zeros
+            long fraction = fixed % pow;
+            for (long p=pow/10; p>1 && fraction<p; p/=10) {
+                append("0");
+            }
+            append(fraction);
+        }
+        return this;
+    }
+}
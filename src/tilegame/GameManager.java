@@ -1,6 +1,7 @@
 package tilegame;
 
 import graphics.Sprite;
+import graphics.SpriteGrid;
 import graphics.input.GameAction;
 import graphics.input.InputManager;
 import sound.*;
@@ -12,7 +13,9 @@ import javax.sound.midi.Sequencer;
 import javax.sound.sampled.AudioFormat;
 import java.awt.*;
 import java.awt.event.KeyEvent;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
@@ -23,18 +26,60 @@ public class GameManager extends GameCore {
     public int doneTime;
 
     public static void main(String[] args) {
-        new GameManager().run();
+        GameManager game = new GameManager();
+        // draw on a separate thread with -renderthread
+        for (int i=0; i<args.length; i++) {
+            if (args[i].equals("-renderthread")) {
+                game.setRenderThread(true);
+            }
+        }
+        game.run();
     }
 
     // uncompressed, 44100Hz, 16-bit, mono, signed, little-endian
-    private static final AudioFormat PLAYBACK_FORMAT =
+    static final AudioFormat PLAYBACK_FORMAT =
         new AudioFormat(44100, 16, 1, true, false);
 
     private static final int DRUM_TRACK = 1;
 
     public static final float GRAVITY = 0.002f;
 
-    private Point pointCache = new Point();
+    private TileCollision tileCollision = new TileCollision();
+
+    /**
+        Activity tiers. Creatures near the player are simulated
+        every tick, creatures a bit further away every few ticks
+        (with the time saved up), and creatures far away not at
+        all until they come back within the wake radius.
+    */
+    public static final byte TIER_ACTIVE = 0;
+    public static final byte TIER_NEARBY = 1;
+    public static final byte TIER_DORMANT = 2;
+
+    private int activeRadius = 1024;
+    private int wakeRadius = 3072;
+    private int nearbyInterval = 4;
+    private long tickCount;
+
+    // parallel creature updates
+    private static final int PARALLEL_THRESHOLD = 1024;
+    private static final int BAND_WIDTH = 16; // in tiles
+    private boolean parallelUpdate;
+    private int parallelThreshold = PARALLEL_THRESHOLD;
+    private ForkJoinPool forkJoinPool;
+    private int numBands;
+    // a TileCollision for each band, so leaf tasks don't make one
+    private TileCollision[] bandCollisions;
+    private int[] bandStart;
+    private int[] bandNext;
+    private int[] bandIds;
+    private int[] bandOf;
+    private SpriteGrid.Matcher collisionMatcher =
+        new SpriteGrid.Matcher() {
+            public boolean matches(Sprite sprite, Sprite other) {
+                return isCollision(sprite, other);
+            }
+        };
     public TileMap map;
     private MidiPlayer midiPlayer;
     private SoundManager soundManager;
@@ -55,6 +100,14 @@ public class GameManager extends GameCore {
     private graphics.input.GameAction exit;
     private graphics.input.GameAction debug;
 
+    // snapshots passed from the simulation to draw()
+    private TripleBuffer frames = new TripleBuffer(
+        new RenderSnapshot(), new RenderSnapshot(),
+        new RenderSnapshot());
+
+    // width of the imaginary screen when running headless, or 0
+    private int headlessViewWidth;
+
     public void init() {
         super.init();
 
@@ -79,9 +132,9 @@ public class GameManager extends GameCore {
 
         // load sounds
         soundManager = new SoundManager(PLAYBACK_FORMAT);
-        prizeSound = soundManager.getSound("sounds/prize.wav");
-        boopSound = soundManager.getSound("sounds/boop2.wav");
-//        oofSound = soundManager.getSound("sounds/player/oof.wav");
+        prizeSound = loadSound("sounds/prize.wav");
+        boopSound = loadSound("sounds/boop2.wav");
+//        oofSound = loadSound("sounds/player/oof.wav");
 
         // start music
         midiPlayer = new MidiPlayer();
@@ -92,17 +145,45 @@ public class GameManager extends GameCore {
     }
 
 
+    /**
+        Sets up the game without a display, sound or music, so
+        the simulation can be stepped by calling update()
+        directly. Creatures wake up when they come within
+        viewWidth pixels of the left edge of where the screen
+        would be.
+        <p>
+        The ResourceManager should have been created with a null
+        GraphicsConfiguration, and may be shared between several
+        headless games as long as they aren't run at once.
+    */
+    public void initHeadless(ResourceManager resourceManager,
+        int viewWidth)
+    {
+        this.headlessViewWidth = viewWidth;
+        createGameActions();
+
+        // start from the first map
+        this.resourceManager = resourceManager;
+        resourceManager.reset();
+        map = resourceManager.loadNextMap();
+    }
+
+
     /**
         Closes any resources used by the GameManager.
     */
     public void stop() {
         super.stop();
-        midiPlayer.close();
-        soundManager.close();
+        if (midiPlayer != null) {
+            midiPlayer.close();
+        }
+        if (soundManager != null) {
+            soundManager.close();
+        }
     }
 
 
-    private void initInput() { // controls
+    private void createGameActions() {
         moveLeft = new graphics.input.GameAction("moveLeft");
         moveRight = new graphics.input.GameAction("moveRight");
         jump = new graphics.input.GameAction(
@@ -121,6 +202,11 @@ public class GameManager extends GameCore {
                 "debug",
                 graphics.input.GameAction.DETECT_INITAL_PRESS_ONLY
         );
+    }
+
+
+    private void initInput() { // controls
+        createGameActions();
 
         inputManager = new InputManager(
             screen.getFullScreenWindow());
@@ -135,6 +221,54 @@ public class GameManager extends GameCore {
     }
 
 
+    /**
+        Presses or releases the movement keys without a keyboard,
+        and taps the jump key if jumpPressed is true. Used to
+        script the player when running headless.
+    */
+    void setScriptedInput(boolean left, boolean right,
+        boolean jumpPressed)
+    {
+        setPressed(moveLeft, left);
+        setPressed(moveRight, right);
+        if (jumpPressed) {
+            jump.tap();
+        }
+    }
+
+
+    private void setPressed(GameAction action, boolean pressed) {
+        if (pressed) {
+            action.press();
+        }
+        else {
+            action.release();
+        }
+    }
+
+
+    /**
+        Loads a sound from the asset bundle, or from its file if
+        the bundle doesn't have it.
+    */
+    private Sound loadSound(String path) {
+        Sound sound = resourceManager.getBundledSound(path,
+            PLAYBACK_FORMAT);
+        return (sound != null) ? sound : soundManager.getSound(path);
+    }
+
+
+    /**
+        Plays a sound, unless sound is turned off (for example,
+        when running headless).
+    */
+    private void playSound(Sound sound) {
+        if (soundManager != null) {
+            soundManager.play(sound);
+        }
+    }
+
+
     private void checkInput(long elapsedTime) {
 
         if (exit.isPressed()) {
@@ -167,8 +301,20 @@ public class GameManager extends GameCore {
     }
 
 
+    /**
+        Takes a snapshot of the map for the next frame and hands
+        it to draw(), which may be running on the render thread.
+    */
+    protected void publishFrame() {
+        RenderSnapshot snapshot = (RenderSnapshot)frames.getWriteBuffer();
+        renderer.capture(snapshot, map, screen.getWidth(),
+            screen.getHeight(), getInterpolation());
+        frames.publish();
+    }
+
+
     public void draw(Graphics2D g) {
-        renderer.draw(g, map,
+        renderer.draw(g, (RenderSnapshot)frames.getReadBuffer(),
             screen.getWidth(), screen.getHeight());
     }
 
@@ -185,6 +331,9 @@ public class GameManager extends GameCore {
         Turns on/off drum playback in the midi music (track 1).
     */
     public void toggleDrumPlayback() {
+        if (midiPlayer == null) {
+            return;
+        }
         Sequencer sequencer = midiPlayer.getSequencer();
         if (sequencer != null) {
             sequencer.setTrackMute(DRUM_TRACK,
@@ -194,41 +343,28 @@ public class GameManager extends GameCore {
 
 
     /**
-        Gets the tile that a Sprites collides with. Only the
-        Sprite's X or Y should be changed, not both. Returns null
-        if no collision is detected.
+        Moves a Creature along its velocity for the specified
+        amount of time, stopping it at the first tile it runs
+        into and then sliding it along that tile for the rest of
+        the time. Calls collideHorizontal() and/or
+        collideVertical() on the Creature if it hit any tiles.
     */
-    public Point getTileCollision(Sprite sprite,
-        float newX, float newY)
+    private void moveCreature(Creature creature, long elapsedTime,
+        TileCollision collision)
     {
-        float fromX = Math.min(sprite.getX(), newX);
-        float fromY = Math.min(sprite.getY(), newY);
-        float toX = Math.max(sprite.getX(), newX);
-        float toY = Math.max(sprite.getY(), newY);
-
-        // get the tile locations
-        int fromTileX = TileMapRenderer.pixelsToTiles(fromX);
-        int fromTileY = TileMapRenderer.pixelsToTiles(fromY);
-        int toTileX = TileMapRenderer.pixelsToTiles(
-            toX + sprite.getWidth() - 1);
-        int toTileY = TileMapRenderer.pixelsToTiles(
-            toY + sprite.getHeight() - 1);
-
-        // check each tile for a collision
-        for (int x=fromTileX; x<=toTileX; x++) {
-            for (int y=fromTileY; y<=toTileY; y++) {
-                if (x < 0 || x >= map.getWidth() ||
-                    map.getTile(x, y) != null)
-                {
-                    // collision found, return the tile
-                    pointCache.setLocation(x, y);
-                    return pointCache;
-                }
-            }
+        int hits = collision.move(map,
+            creature.getX(), creature.getY(),
+            creature.getWidth(), creature.getHeight(),
+            creature.getVelocityX() * elapsedTime,
+            creature.getVelocityY() * elapsedTime);
+        creature.setX(collision.endX);
+        creature.setY(collision.endY);
+        if ((hits & TileCollision.HIT_HORIZONTAL) != 0) {
+            creature.collideHorizontal();
+        }
+        if ((hits & TileCollision.HIT_VERTICAL) != 0) {
+            creature.collideVertical();
         }
-
-        // no collision found
-        return null;
     }
 
 
@@ -268,21 +404,13 @@ public class GameManager extends GameCore {
     /**
         Gets the Sprite that collides with the specified Sprite,
         or null if no Sprite collides with the specified Sprite.
+        If several Sprites collide, the one added to the map
+        first is returned.
     */
     public Sprite getSpriteCollision(Sprite sprite) {
-
-        // run through the list of Sprites
-        Iterator i = map.getSprites();
-        while (i.hasNext()) {
-            Sprite otherSprite = (Sprite)i.next();
-            if (isCollision(sprite, otherSprite)) {
-                // collision found, return the Sprite
-                return otherSprite;
-            }
-        }
-
-        // no collision found
-        return null;
+        // only look at the Sprites in the neighboring cells
+        return map.getSpriteGrid().findFirst(sprite,
+            collisionMatcher);
     }
 
 
@@ -294,6 +422,7 @@ public class GameManager extends GameCore {
         Player player = (Player)map.getPlayer();
         // player is dead! start map over
         if (player.getState() == Creature.STATE_DEAD) {
+            resourceManager.recycleSprites(map);
             map = resourceManager.reloadMap();
             return;
         }
@@ -301,94 +430,339 @@ public class GameManager extends GameCore {
         // get keyboard/mouse input
         checkInput(elapsedTime);
 
+        // load the parts of the map around the player
+        map.updateStreaming(
+            TileMapRenderer.pixelsToTiles(player.getX()),
+            TileMapRenderer.pixelsToTiles(player.getY()));
+
         // update player
+        player.savePosition();
         updatePlayer(player, elapsedTime);
         player.update(elapsedTime);
 
+        // remove dead creatures
+        for (int i=0; i<map.getNumSprites(); i++) {
+            Sprite sprite = map.getSprite(i);
+            sprite.savePosition();
+            if (sprite instanceof Creature &&
+                ((Creature)sprite).getState() == Creature.STATE_DEAD)
+            {
+                map.removeSpriteLater(sprite);
+            }
+        }
+
+        // decide which creatures to simulate this tick
+        updateActivity(map.getCreatures(), player, elapsedTime);
+        tickCount++;
+
+        // apply gravity and move every creature at once
+        updateCreatures(map.getCreatures());
+
         // update other sprites
-        Iterator i = map.getSprites();
-        while (i.hasNext()) {
-            Sprite sprite = (Sprite)i.next();
+        for (int i=0; i<map.getNumSprites(); i++) {
+            Sprite sprite = map.getSprite(i);
+            if (sprite.isRemovePending()) {
+                continue;
+            }
             if (sprite instanceof Creature) {
                 Creature creature = (Creature)sprite;
-                if (creature.getState() == Creature.STATE_DEAD) {
-                    i.remove();
+                CreatureStore store = map.getCreatures();
+                int id = creature.getEntityId();
+                int stepTime = store.stepTime[id];
+                if (stepTime > 0) {
+                    updateCreature(creature, stepTime);
+                    // normal update
+                    creature.update(stepTime);
+                    store.updateSize(id);
+                }
+            }
+            else {
+                // normal update
+                sprite.update(elapsedTime);
+            }
+        }
+
+        // apply the removals made during this tick
+        map.flushRemovals(resourceManager);
+    }
+
+
+    /**
+        Sorts creatures into activity tiers by their distance
+        from the player, and sets how much time each one is
+        simulated for this tick. Creatures in the screen's
+        columns are woken up, even if they're above or below it.
+    */
+    private void updateActivity(CreatureStore store, Player player,
+        long elapsedTime)
+    {
+        float cameraX = player.getX();
+        float cameraY = player.getY();
+        int viewWidth = getViewWidth();
+        int offsetX = TileMapRenderer.getOffsetX(map, viewWidth,
+            Math.round(cameraX));
+        for (int id=0; id<store.size; id++) {
+            int x = Math.round(store.x[id]) + offsetX;
+            if (x >= 0 && x < viewWidth) {
+                store.creatures[id].wakeUp();
+            }
+
+            float distance = Math.max(
+                Math.abs(store.x[id] - cameraX),
+                Math.abs(store.y[id] - cameraY));
+            if (!map.isLoaded(
+                TileMapRenderer.pixelsToTiles(store.x[id]),
+                TileMapRenderer.pixelsToTiles(store.y[id])))
+            {
+                // no tiles to stand on yet
+                distance = Float.MAX_VALUE;
+            }
+            if (distance <= activeRadius) {
+                // catch up on any time saved while further away
+                store.tier[id] = TIER_ACTIVE;
+                store.stepTime[id] =
+                    store.pendingTime[id] + (int)elapsedTime;
+                store.pendingTime[id] = 0;
+            }
+            else if (distance <= wakeRadius) {
+                // coarse updates, staggered so they don't all
+                // happen on the same tick
+                store.tier[id] = TIER_NEARBY;
+                store.pendingTime[id] += (int)elapsedTime;
+                if ((tickCount + id) % nearbyInterval == 0) {
+                    store.stepTime[id] = store.pendingTime[id];
+                    store.pendingTime[id] = 0;
                 }
                 else {
-                    updateCreature(creature, elapsedTime);
+                    store.stepTime[id] = 0;
                 }
             }
-            // normal update
-            sprite.update(elapsedTime);
+            else {
+                // frozen
+                store.tier[id] = TIER_DORMANT;
+                store.stepTime[id] = 0;
+                store.pendingTime[id] = 0;
+            }
         }
     }
 
 
     /**
-        Updates the creature, applying gravity for creatures that
-        aren't flying, and checks collisions.
+        Gets the width of the screen, or of the imaginary screen
+        when running headless.
     */
-    private void updateCreature(Creature creature, long elapsedTime)
+    private int getViewWidth() {
+        if (headlessViewWidth > 0 || screen == null) {
+            return headlessViewWidth;
+        }
+        return screen.getWidth();
+    }
+
+
+    /**
+        Sets the activity tier distances, in pixels from the
+        player. Creatures within activeRadius are simulated every
+        tick, creatures within wakeRadius every nearbyInterval
+        ticks, and the rest are frozen.
+    */
+    public void setActivityTiers(int activeRadius, int wakeRadius,
+        int nearbyInterval)
     {
+        this.activeRadius = activeRadius;
+        this.wakeRadius = Math.max(wakeRadius, activeRadius);
+        this.nearbyInterval = Math.max(nearbyInterval, 1);
+    }
 
-        // apply gravity
-        if (!creature.isFlying()) {
-            creature.setVelocityY(creature.getVelocityY() +
-                GRAVITY * elapsedTime);
-        }
 
-        // change x
-        float dx = creature.getVelocityX();
-        float oldX = creature.getX();
-        float newX = oldX + dx * elapsedTime;
-        Point tile =
-            getTileCollision(creature, newX, creature.getY());
-        if (tile == null) {
-            creature.setX(newX);
+    /**
+        Applies gravity to every creature in the store that isn't
+        flying, and moves them all for their step time, stopping
+        at tiles. In
+        parallel update mode, creatures are split into bands of
+        map columns that are moved at the same time on a
+        ForkJoinPool. Either way, the result is exactly the same.
+    */
+    private void updateCreatures(CreatureStore store) {
+        if (parallelUpdate && store.size >= parallelThreshold) {
+            sortIntoBands(store);
+            forkJoinPool.invoke(new BandTask(store, 0, numBands));
         }
         else {
-            // line up with the tile boundary
-            if (dx > 0) {
-                creature.setX(
-                    TileMapRenderer.tilesToPixels(tile.x) -
-                    creature.getWidth());
+            for (int id=0; id<store.size; id++) {
+                moveCreature(store, id, tileCollision);
+            }
+        }
+
+        // move creatures that crossed a cell boundary in the grid.
+        // the grid isn't thread-safe, so this is always done here,
+        // in id order.
+        for (int id=0; id<store.size; id++) {
+            store.positionChanged(id);
+        }
+    }
+
+
+    /**
+        Applies gravity to the creature with the specified id and
+        moves it for its step time, stopping at tiles. Only
+        touches that creature, so creatures can be moved on
+        different threads as long as each uses its own
+        TileCollision.
+    */
+    private void moveCreature(CreatureStore store, int id,
+        TileCollision collision)
+    {
+        int elapsedTime = store.stepTime[id];
+        if (elapsedTime == 0) {
+            return;
+        }
+
+        // apply gravity
+        if (store.hasGravity(id)) {
+            store.dy[id] += GRAVITY * elapsedTime;
+        }
+
+        // move, stopping at tiles
+        int hits = collision.move(map, store.x[id], store.y[id],
+            store.width[id], store.height[id],
+            store.dx[id] * elapsedTime, store.dy[id] * elapsedTime);
+        store.x[id] = collision.endX;
+        store.y[id] = collision.endY;
+        if (hits != 0) {
+            Creature creature = store.creatures[id];
+            if ((hits & TileCollision.HIT_HORIZONTAL) != 0) {
+                creature.collideHorizontal();
             }
-            else if (dx < 0) {
-                creature.setX(
-                    TileMapRenderer.tilesToPixels(tile.x + 1));
+            if ((hits & TileCollision.HIT_VERTICAL) != 0) {
+                creature.collideVertical();
             }
-            creature.collideHorizontal();
         }
-        if (creature instanceof Player) {
-            checkPlayerCollision((Player)creature, false);
+    }
+
+
+    /**
+        Sorts the ids of the creatures in the store by the band
+        of map columns they're in, using a counting sort. The ids
+        in band b end up in bandIds[bandStart[b]] to
+        bandIds[bandStart[b+1]-1], in increasing order.
+    */
+    private void sortIntoBands(CreatureStore store) {
+        numBands = Math.max(1,
+            (map.getWidth() + BAND_WIDTH - 1) / BAND_WIDTH);
+        if (bandStart == null || bandStart.length < numBands + 1) {
+            bandStart = new int[numBands + 1];
+        }
+        if (bandCollisions == null || bandCollisions.length < numBands) {
+            TileCollision[] collisions = new TileCollision[numBands];
+            for (int b=0; b<numBands; b++) {
+                collisions[b] = (bandCollisions != null &&
+                    b < bandCollisions.length) ?
+                    bandCollisions[b] : new TileCollision();
+            }
+            bandCollisions = collisions;
+        }
+        if (bandIds == null || bandIds.length < store.size) {
+            bandIds = new int[store.creatures.length];
+            bandOf = new int[store.creatures.length];
         }
 
-        // change y
-        float dy = creature.getVelocityY();
-        float oldY = creature.getY();
-        float newY = oldY + dy * elapsedTime;
-        tile = getTileCollision(creature, creature.getX(), newY);
-        if (tile == null) {
-            creature.setY(newY);
+        // count the creatures in each band
+        Arrays.fill(bandStart, 0, numBands + 1, 0);
+        for (int id=0; id<store.size; id++) {
+            int band = TileMapRenderer.pixelsToTiles(store.x[id]) /
+                BAND_WIDTH;
+            band = Math.max(0, Math.min(band, numBands - 1));
+            bandOf[id] = band;
+            bandStart[band + 1]++;
         }
-        else {
-            // line up with the tile boundary
-            if (dy > 0) {
-                creature.setY(
-                    TileMapRenderer.tilesToPixels(tile.y) -
-                    creature.getHeight());
+        for (int b=0; b<numBands; b++) {
+            bandStart[b + 1] += bandStart[b];
+        }
+
+        // place each id in its band
+        int[] next = bandNext;
+        if (next == null || next.length < numBands) {
+            next = bandNext = new int[numBands];
+        }
+        System.arraycopy(bandStart, 0, next, 0, numBands);
+        for (int id=0; id<store.size; id++) {
+            bandIds[next[bandOf[id]]++] = id;
+        }
+    }
+
+
+    /**
+        A BandTask moves the creatures in a range of bands,
+        splitting the range in half until it has one band.
+    */
+    private class BandTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private CreatureStore store;
+        private int fromBand;
+        private int toBand;
+
+        public BandTask(CreatureStore store, int fromBand,
+            int toBand)
+        {
+            this.store = store;
+            this.fromBand = fromBand;
+            this.toBand = toBand;
+        }
+
+        protected void compute() {
+            if (toBand - fromBand > 1) {
+                int middle = (fromBand + toBand) / 2;
+                invokeAll(new BandTask(store, fromBand, middle),
+                    new BandTask(store, middle, toBand));
+                return;
             }
-            else if (dy < 0) {
-                creature.setY(
-                    TileMapRenderer.tilesToPixels(tile.y + 1));
+            TileCollision collision = bandCollisions[fromBand];
+            for (int i=bandStart[fromBand]; i<bandStart[toBand]; i++) {
+                moveCreature(store, bandIds[i], collision);
             }
-            creature.collideVertical();
         }
-        if (creature instanceof Player) {
-            boolean canKill = (oldY < creature.getY());
-            checkPlayerCollision((Player)creature, canKill);
+    }
+
+
+    /**
+        Turns parallel creature updates on or off. When on, maps
+        with many creatures move them on all cores, with exactly
+        the same results as the serial update.
+    */
+    public void setParallelUpdate(boolean parallelUpdate) {
+        this.parallelUpdate = parallelUpdate;
+        if (parallelUpdate && forkJoinPool == null) {
+            forkJoinPool = ForkJoinPool.commonPool();
         }
+    }
+
 
+    /**
+        Sets the number of creatures a map needs for parallel
+        update mode to move them in parallel. The default is high
+        enough that small maps don't pay for the tasks; a lower
+        one lets the parallel path be checked on small maps.
+    */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+
+    /**
+        Checks if parallel creature updates are on.
+    */
+    public boolean isParallelUpdate() {
+        return parallelUpdate;
+    }
+
+
+    /**
+        Updates the creature's stats once it has moved.
+    */
+    private void updateCreature(Creature creature, long elapsedTime)
+    {
         // upgrade all mobs after the time limit as passed
         if(secondsPassed >= creature.upTime){
             if(creature instanceof Creep_Zombie && creature.up != -1) ((Creep_Zombie) creature).upgrade();
@@ -413,57 +787,13 @@ public class GameManager extends GameCore {
                     GRAVITY * elapsedTime);
         }
 
-        // change x
-        float dx = player.getVelocityX();
-        float oldX = player.getX();
-        float newX = oldX + dx * elapsedTime;
-        Point tile =
-                getTileCollision(player, newX, player.getY());
-        if (tile == null) {
-            player.setX(newX);
-        }
-        else {
-            // line up with the tile boundary
-            if (dx > 0) {
-                player.setX(
-                        TileMapRenderer.tilesToPixels(tile.x) -
-                                player.getWidth());
-            }
-            else if (dx < 0) {
-                player.setX(
-                        TileMapRenderer.tilesToPixels(tile.x + 1));
-            }
-            player.collideHorizontal();
-        }
-        if (player instanceof Player) {
-            checkPlayerCollision((Player)player, false);
-        }
-
-        // change y
-        float dy = player.getVelocityY();
+        // move, stopping at tiles
         float oldY = player.getY();
-        float newY = oldY + dy * elapsedTime;
-        tile = getTileCollision(player, player.getX(), newY);
-        if (tile == null) {
-            player.setY(newY);
-        }
-        else {
-            // line up with the tile boundary
-            if (dy > 0) {
-                player.setY(
-                        TileMapRenderer.tilesToPixels(tile.y) -
-                                player.getHeight());
-            }
-            else if (dy < 0) {
-                player.setY(
-                        TileMapRenderer.tilesToPixels(tile.y + 1));
-            }
-            player.collideVertical();
-        }
-        if (player instanceof Player) {
-            boolean canKill = (oldY < player.getY());
-            checkPlayerCollision((Player)player, canKill);
-        }
+        moveCreature(player, elapsedTime, tileCollision);
+
+        // the player can only kill things by landing on them
+        boolean canKill = (oldY < player.getY());
+        checkPlayerCollision(player, canKill);
 
         if(player.exp >= player.toNextLevel) player.levelUp();
         if(player.score >= player.up1 && player.up1 != -1) player.upgrade1();
@@ -494,7 +824,7 @@ public class GameManager extends GameCore {
             if (canKill) {
                 // kill the badguy and make player bounce
                 // add score here
-                soundManager.play(boopSound);
+                playSound(boopSound);
                 badguy.health -= player.damage;
                 if(badguy.health <= 0){
                     if(badguy instanceof Creep_Zombie || badguy instanceof  Creep_Fly || badguy instanceof Dio) resourceManager.numBaddies--;
@@ -537,24 +867,29 @@ public class GameManager extends GameCore {
         if (powerUp instanceof PowerUp.Heart) {
             // do something here, like give the player points
             if(map.getPlayer().health < map.getPlayer().maxHP){
-                map.removeSprite(powerUp);
+                map.removeSpriteLater(powerUp);
                 this.map.getPlayer().health += powerUp.worth;
-                soundManager.play(prizeSound);
+                playSound(prizeSound);
             }
         }
         else if (powerUp instanceof PowerUp.Music) {
             // change the music
-            map.removeSprite(powerUp);
-            soundManager.play(prizeSound);
+            map.removeSpriteLater(powerUp);
+            playSound(prizeSound);
             toggleDrumPlayback();
 
         }
         else if (powerUp instanceof PowerUp.Goal) {
             // advance to next map
             if(resourceManager.numBaddies <= 0){
-                map.removeSprite(powerUp);
-                soundManager.play(prizeSound,
-                        new EchoFilter(2000, .7f), false);
+                map.removeSpriteLater(powerUp);
+                if (soundManager != null) {
+                    soundManager.play(prizeSound,
+                            new EchoFilter(2000, .7f), false);
+                }
+                // the next map was built in the background while
+                // this one was played
+                resourceManager.recycleSprites(map);
                 map = resourceManager.loadNextMap();
             }
             else{
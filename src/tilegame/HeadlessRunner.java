@@ -0,0 +1,205 @@
+package tilegame;
+
+import tilegame.sprites.CreatureStore;
+
+/**
+    The HeadlessRunner runs the game without a display, sound or
+    music, stepping the simulation as fast as possible, and
+    reports how many ticks per second it managed. The player is
+    scripted to run right and jump every so often.
+    <p>
+    It's useful to soak-test many simulated sessions in a row,
+    and to time the update and collision code on its own.
+    <p>
+    In compare mode, it runs the same session twice in lockstep,
+    once updating creatures serially and once in parallel (on
+    every map, however few creatures it has), and checks after
+    every tick that the creature state arrays are exactly the
+    same.
+    <p>
+    Usage: <code>java tilegame.HeadlessRunner [ticks] [sessions]
+    [parallel|compare]</code>
+*/
+public class HeadlessRunner {
+
+    private static final int DEFAULT_TICKS = 10000;
+    private static final int DEFAULT_SESSIONS = 1;
+
+    // width of the imaginary screen used to wake up creatures
+    private static final int VIEW_WIDTH = 800;
+
+    // number of ticks between scripted jumps
+    private static final int JUMP_INTERVAL = 45;
+
+    private boolean parallelUpdate;
+
+
+    /**
+        Sets whether the sessions update creatures in parallel.
+    */
+    public void setParallelUpdate(boolean parallelUpdate) {
+        this.parallelUpdate = parallelUpdate;
+    }
+
+
+    public static void main(String[] args) {
+        // must be set before any AWT class is touched
+        System.setProperty("java.awt.headless", "true");
+
+        int ticks = (args.length > 0) ?
+            Integer.parseInt(args[0]) : DEFAULT_TICKS;
+        int sessions = (args.length > 1) ?
+            Integer.parseInt(args[1]) : DEFAULT_SESSIONS;
+        boolean parallel = (args.length > 2) &&
+            args[2].equals("parallel");
+        boolean compare = (args.length > 2) &&
+            args[2].equals("compare");
+
+        HeadlessRunner runner = new HeadlessRunner();
+        if (compare) {
+            if (!runner.compareParallel(ticks)) {
+                System.exit(1);
+            }
+            return;
+        }
+        runner.setParallelUpdate(parallel);
+        runner.run(ticks, sessions);
+    }
+
+
+    /**
+        Runs the specified number of sessions, each for the
+        specified number of ticks. All sessions share one
+        ResourceManager, so images are only loaded once.
+    */
+    public void run(int ticks, int sessions) {
+        ResourceManager resourceManager = new ResourceManager(null);
+
+        long totalTicks = 0;
+        long totalNanos = 0;
+        for (int i=0; i<sessions; i++) {
+            GameManager game = new GameManager();
+            game.initHeadless(resourceManager, VIEW_WIDTH);
+            game.setParallelUpdate(parallelUpdate);
+            if (game.getMap() == null) {
+                System.out.println("No maps to load!");
+                return;
+            }
+
+            long startTime = System.nanoTime();
+            runSession(game, ticks);
+            long elapsed = System.nanoTime() - startTime;
+
+            totalTicks += ticks;
+            totalNanos += elapsed;
+            report("session " + (i + 1), ticks, elapsed);
+        }
+        if (sessions > 1) {
+            report("total", totalTicks, totalNanos);
+        }
+    }
+
+
+    /**
+        Steps the specified game for a number of ticks.
+    */
+    public void runSession(GameManager game, int ticks) {
+        for (int t=0; t<ticks; t++) {
+            game.setScriptedInput(false, true,
+                t % JUMP_INTERVAL == 0);
+            game.runTick();
+        }
+    }
+
+
+    /**
+        Runs a session for the specified number of ticks with
+        serial creature updates, and the same session with
+        parallel ones, checking after every tick that both have
+        exactly the same creatures in the same state. Each
+        session has its own ResourceManager, so they share no
+        state. Returns true if they matched.
+    */
+    public boolean compareParallel(int ticks) {
+        GameManager serial = new GameManager();
+        serial.initHeadless(new ResourceManager(null), VIEW_WIDTH);
+        GameManager parallel = new GameManager();
+        parallel.initHeadless(new ResourceManager(null), VIEW_WIDTH);
+        parallel.setParallelUpdate(true);
+        parallel.setParallelThreshold(1);
+        if (serial.getMap() == null) {
+            System.out.println("No maps to load!");
+            return false;
+        }
+
+        long creatureTicks = 0;
+        for (int t=0; t<ticks; t++) {
+            boolean jump = (t % JUMP_INTERVAL == 0);
+            serial.setScriptedInput(false, true, jump);
+            serial.runTick();
+            parallel.setScriptedInput(false, true, jump);
+            parallel.runTick();
+
+            CreatureStore expected = serial.getMap().getCreatures();
+            CreatureStore actual = parallel.getMap().getCreatures();
+            String difference = compare(expected, actual);
+            if (difference != null) {
+                System.out.println("Parallel update differs at tick " +
+                    t + ": " + difference);
+                return false;
+            }
+            creatureTicks += expected.size;
+        }
+        System.out.println("Parallel update matched serial for " +
+            ticks + " ticks (" + creatureTicks + " creature updates)");
+        return true;
+    }
+
+
+    /**
+        Compares two CreatureStores, returning a description of
+        the first difference, or null if they're the same.
+    */
+    private String compare(CreatureStore expected,
+        CreatureStore actual)
+    {
+        if (expected.size != actual.size) {
+            return "size " + actual.size + " instead of " +
+                expected.size;
+        }
+        for (int id=0; id<expected.size; id++) {
+            if (expected.creatures[id].getClass() !=
+                actual.creatures[id].getClass() ||
+                Float.floatToIntBits(expected.x[id]) !=
+                Float.floatToIntBits(actual.x[id]) ||
+                Float.floatToIntBits(expected.y[id]) !=
+                Float.floatToIntBits(actual.y[id]) ||
+                Float.floatToIntBits(expected.dx[id]) !=
+                Float.floatToIntBits(actual.dx[id]) ||
+                Float.floatToIntBits(expected.dy[id]) !=
+                Float.floatToIntBits(actual.dy[id]) ||
+                expected.state[id] != actual.state[id])
+            {
+                return "creature " + id + " is " + describe(actual, id) +
+                    " instead of " + describe(expected, id);
+            }
+        }
+        return null;
+    }
+
+
+    private String describe(CreatureStore store, int id) {
+        return store.creatures[id].getClass().getSimpleName() +
+            " at (" + store.x[id] + ", " + store.y[id] + ") moving (" +
+            store.dx[id] + ", " + store.dy[id] + ") in state " +
+            store.state[id];
+    }
+
+
+    private void report(String name, long ticks, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println(name + ": " + ticks + " ticks in " +
+            Math.round(seconds * 1000) + "ms (" +
+            Math.round(ticks / seconds) + " ticks/s)");
+    }
+}
@@ -0,0 +1,89 @@
+package tilegame;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+    The HudLayer class is a heads-up display drawn from a cached
+    translucent image. Subclasses say which values the display
+    shows (readValues()) and how to draw them (render()); the
+    image is only redrawn when one of the values changes, so most
+    frames draw the whole display with one drawImage() and
+    without allocating anything.
+*/
+public abstract class HudLayer {
+
+    private int width;
+    private int height;
+    private int[] values;
+    private int[] lastValues;
+    private Image image;
+    private GraphicsConfiguration gc;
+    private boolean valid;
+
+    /**
+        Creates a new HudLayer watching the specified number of
+        values, with an image of the specified size.
+    */
+    public HudLayer(int numValues, int width, int height) {
+        this.width = width;
+        this.height = height;
+        values = new int[numValues];
+        lastValues = new int[numValues];
+    }
+
+
+    /**
+        Fills in the current values shown by this display.
+    */
+    protected abstract void readValues(int[] values);
+
+
+    /**
+        Draws this display for the specified values onto a
+        cleared, transparent image.
+    */
+    protected abstract void render(Graphics2D g, int[] values);
+
+
+    /**
+        Makes the next call to draw() redraw the cached image,
+        even if no values have changed.
+    */
+    public void invalidate() {
+        valid = false;
+    }
+
+
+    /**
+        Draws this display with its upper-left corner at the
+        specified location.
+    */
+    public void draw(Graphics2D g, int x, int y) {
+        readValues(values);
+
+        GraphicsConfiguration newGc = g.getDeviceConfiguration();
+        if (image == null || newGc != gc) {
+            if (image != null) {
+                image.flush();
+            }
+            gc = newGc;
+            image = gc.createCompatibleImage(width, height,
+                Transparency.TRANSLUCENT);
+            valid = false;
+        }
+
+        if (!valid || !Arrays.equals(values, lastValues)) {
+            Graphics2D imageG = (Graphics2D)image.getGraphics();
+            imageG.setComposite(AlphaComposite.Clear);
+            imageG.fillRect(0, 0, width, height);
+            imageG.setComposite(AlphaComposite.SrcOver);
+            render(imageG, values);
+            imageG.dispose();
+            System.arraycopy(values, 0, lastValues, 0, values.length);
+            valid = true;
+        }
+
+        g.drawImage(image, x, y, null);
+    }
+}
@@ -0,0 +1,231 @@
+package tilegame;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+    The ImageCache class is a registry of images keyed by path
+    and transform (IDENTITY, MIRROR, FLIP, or MIRROR | FLIP).
+    Each image is made once and shared: asking for an image
+    that's already loaded, or still loading, returns the same
+    CompletableFuture, so the same file is never decoded twice and
+    the same mirror never made twice.
+    <p>
+    The cache counts hits and misses, and how much memory each
+    loaded image takes up.
+*/
+public class ImageCache {
+
+    public static final int IDENTITY = 0;
+    public static final int MIRROR = 1;
+    public static final int FLIP = 2;
+
+    private ConcurrentHashMap<String, CompletableFuture<Image>> images =
+        new ConcurrentHashMap<String, CompletableFuture<Image>>();
+    private AtomicInteger hits = new AtomicInteger();
+    private AtomicInteger misses = new AtomicInteger();
+    private AtomicInteger numLoaded = new AtomicInteger();
+    private AtomicLong memoryUsed = new AtomicLong();
+    // the memory used by each loaded image, by key
+    private ConcurrentHashMap<String, Long> memorySizes =
+        new ConcurrentHashMap<String, Long>();
+
+    // number of images listed by printReport()
+    private static final int NUM_LARGEST = 5;
+
+    /**
+        Gets the image for the specified path and transform. If
+        it isn't in the cache, loader is called to start making
+        it. The loader may itself get other images from the
+        cache, such as the image a mirror is made from.
+    */
+    public CompletableFuture<Image> get(String path, int transform,
+        Supplier<CompletableFuture<Image>> loader)
+    {
+        String key = getKey(path, transform);
+        CompletableFuture<Image> image = images.get(key);
+        if (image == null) {
+            // claim the key, then start loading outside the map
+            CompletableFuture<Image> newImage =
+                new CompletableFuture<Image>();
+            image = images.putIfAbsent(key, newImage);
+            if (image == null) {
+                misses.incrementAndGet();
+                load(key, newImage, loader);
+                return newImage;
+            }
+        }
+        hits.incrementAndGet();
+        return image;
+    }
+
+
+    private void load(final String key,
+        final CompletableFuture<Image> image,
+        Supplier<CompletableFuture<Image>> loader)
+    {
+        CompletableFuture<Image> source;
+        try {
+            source = loader.get();
+        }
+        catch (RuntimeException ex) {
+            image.completeExceptionally(ex);
+            return;
+        }
+        source.whenComplete(new BiConsumer<Image, Throwable>() {
+            public void accept(Image result, Throwable error) {
+                if (error != null) {
+                    image.completeExceptionally(error);
+                    return;
+                }
+                if (result != null) {
+                    long size = getMemorySize(result);
+                    numLoaded.incrementAndGet();
+                    memoryUsed.addAndGet(size);
+                    memorySizes.put(key, Long.valueOf(size));
+                }
+                image.complete(result);
+            }
+        });
+    }
+
+
+    /**
+        Gets the key an image is cached under, such as
+        "fly/0.png#mirror".
+    */
+    public static String getKey(String path, int transform) {
+        switch (transform) {
+            case IDENTITY: return path;
+            case MIRROR: return path + "#mirror";
+            case FLIP: return path + "#flip";
+            default: return path + "#mirror#flip";
+        }
+    }
+
+
+    /**
+        Gets the keys of every image in the cache, loaded or
+        still loading.
+    */
+    public String[] getKeys() {
+        return images.keySet().toArray(new String[0]);
+    }
+
+
+    /**
+        Gets the image cached under the specified key, or null if
+        there is no such image or it hasn't finished loading.
+    */
+    public Image getImage(String key) {
+        CompletableFuture<Image> image = images.get(key);
+        if (image == null || !image.isDone() ||
+            image.isCompletedExceptionally())
+        {
+            return null;
+        }
+        return image.join();
+    }
+
+
+    /**
+        Gets an estimate of the memory used by the pixels of an
+        image, in bytes.
+    */
+    public static long getMemorySize(Image image) {
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        int bitsPerPixel = 32;
+        if (image instanceof BufferedImage) {
+            bitsPerPixel = ((BufferedImage)image).getColorModel().
+                getPixelSize();
+        }
+        return (long)width * height * Math.max(bitsPerPixel, 8) / 8;
+    }
+
+
+    /**
+        Gets the number of requests for an image that was already
+        loaded or loading.
+    */
+    public int getHits() {
+        return hits.get();
+    }
+
+
+    /**
+        Gets the number of requests that started loading an
+        image.
+    */
+    public int getMisses() {
+        return misses.get();
+    }
+
+
+    /**
+        Gets the number of images that have finished loading.
+    */
+    public int getNumImages() {
+        return numLoaded.get();
+    }
+
+
+    /**
+        Gets the memory used by the loaded images, in bytes.
+    */
+    public long getMemoryUsed() {
+        return memoryUsed.get();
+    }
+
+
+    /**
+        Gets the memory used by the image cached under the
+        specified key, in bytes, or 0 if there is no such image
+        or it hasn't finished loading.
+    */
+    public long getMemoryUsed(String key) {
+        Long size = memorySizes.get(key);
+        return (size != null) ? size.longValue() : 0;
+    }
+
+
+    /**
+        Prints the number of images, their memory use, the hits
+        and misses, and the images using the most memory.
+    */
+    public void printReport() {
+        System.out.println("ImageCache: " + getNumImages() +
+            " images, " + (getMemoryUsed() / 1024) + "KB, " +
+            getHits() + " hits, " + getMisses() + " misses");
+
+        ArrayList<Map.Entry<String, Long>> sizes =
+            new ArrayList<Map.Entry<String, Long>>(memorySizes.entrySet());
+        Collections.sort(sizes, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> a,
+                Map.Entry<String, Long> b)
+            {
+                int order = b.getValue().compareTo(a.getValue());
+                return (order != 0) ? order :
+                    a.getKey().compareTo(b.getKey());
+            }
+        });
+        for (int i=0; i<Math.min(NUM_LARGEST, sizes.size()); i++) {
+            System.out.println("ImageCache: " + sizes.get(i).getKey() +
+                " " + (sizes.get(i).getValue().longValue() / 1024) +
+                "KB");
+        }
+    }
+}
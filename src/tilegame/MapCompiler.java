@@ -0,0 +1,191 @@
+package tilegame;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+    The MapCompiler compiles text maps (the authoring format, see
+    maps/map1.txt) into the binary format read by CompiledMap.
+    <p>
+    Usage: <code>java tilegame.MapCompiler [map.txt ...]</code>
+    compiles the specified maps, or every maps/map*.txt, each to
+    a file next to it named by CompiledMap.getCompiledName().
+    Run it from the game's directory; it loads the game's
+    resources to know which characters are tiles, sprites and
+    baddies.
+*/
+public class MapCompiler {
+
+    private static final int MAX_RUN = 255;
+
+    private ResourceManager resourceManager;
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        if (args.length == 0) {
+            File[] files = new File("maps").listFiles();
+            ArrayList<String> names = new ArrayList<String>();
+            for (int i=0; files != null && i<files.length; i++) {
+                String name = files[i].getPath();
+                if (name.endsWith(".txt")) {
+                    names.add(name);
+                }
+            }
+            args = names.toArray(new String[names.size()]);
+            Arrays.sort(args);
+        }
+
+        MapCompiler compiler = new MapCompiler(
+            new ResourceManager(null, null));
+        for (int i=0; i<args.length; i++) {
+            File in = new File(args[i]);
+            File out = new File(CompiledMap.getCompiledName(args[i]));
+            compiler.compile(in, out);
+            System.out.println("Compiled " + in + " (" + in.length() +
+                " bytes) to " + out + " (" + out.length() + " bytes)");
+        }
+    }
+
+
+    /**
+        Creates a new MapCompiler that uses the specified
+        ResourceManager to know which characters are tiles,
+        sprites and baddies.
+    */
+    public MapCompiler(ResourceManager resourceManager) {
+        this.resourceManager = resourceManager;
+    }
+
+
+    /**
+        Compiles a text map into a binary one.
+    */
+    public void compile(File in, File out) throws IOException {
+        // read the lines, skipping comments, as MapFile does
+        ArrayList<String> lines = new ArrayList<String>();
+        int width = 0;
+        BufferedReader reader = new BufferedReader(new FileReader(in));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    lines.add(line);
+                    width = Math.max(width, line.length());
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        int height = lines.size();
+
+        int chunkBits = TileMap.CHUNK_BITS;
+        int chunksAcross = CompiledMap.getNumChunks(width, chunkBits);
+        int numChunks = chunksAcross *
+            CompiledMap.getNumChunks(height, chunkBits);
+
+        // encode the tiles, and find the spawns. each spawn is
+        // { type, x, y, chunk }
+        ByteArrayOutputStream tiles = new ByteArrayOutputStream();
+        int[] rowOffsets = new int[height * chunksAcross];
+        ArrayList<int[]> spawns = new ArrayList<int[]>();
+        int numBaddies = 0;
+        int[] ids = new int[width];
+        for (int y=0; y<height; y++) {
+            String line = lines.get(y);
+            for (int x=0; x<width; x++) {
+                char ch = (x < line.length()) ? line.charAt(x) : ' ';
+                int tile = ch - 'A';
+                ids[x] = 0;
+                if (tile >= 0 && tile < resourceManager.getNumTiles()) {
+                    ids[x] = tile + 1;
+                }
+                else if (resourceManager.isSpawn(ch)) {
+                    int chunk = (y >> chunkBits) * chunksAcross +
+                        (x >> chunkBits);
+                    spawns.add(new int[] { ch, x, y, chunk });
+                }
+                if (resourceManager.isBaddie(ch)) {
+                    numBaddies++;
+                }
+            }
+            for (int i=0; i<chunksAcross; i++) {
+                rowOffsets[y * chunksAcross + i] = tiles.size();
+                writeRuns(tiles, ids, i << chunkBits,
+                    Math.min((i + 1) << chunkBits, width));
+            }
+        }
+
+        // order the spawns by chunk. the sort is stable, so each
+        // chunk's spawns stay in the order they're in the map
+        Collections.sort(spawns, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                return Integer.compare(a[3], b[3]);
+            }
+        });
+        int numSpawns = spawns.size();
+
+        int spawnIndexOffset = CompiledMap.HEADER_SIZE +
+            rowOffsets.length * 4;
+        int spawnsOffset = spawnIndexOffset + (numChunks + 1) * 4;
+        int tilesOffset = spawnsOffset +
+            numSpawns * CompiledMap.SPAWN_SIZE;
+
+        DataOutputStream data = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(out)));
+        try {
+            data.writeInt(CompiledMap.MAGIC);
+            data.writeInt(CompiledMap.VERSION);
+            data.writeInt(width);
+            data.writeInt(height);
+            data.writeInt(numBaddies);
+            data.writeInt(numSpawns);
+            data.writeInt(chunkBits);
+            for (int i=0; i<rowOffsets.length; i++) {
+                data.writeInt(tilesOffset + rowOffsets[i]);
+            }
+            int first = 0;
+            for (int i=0; i<numChunks; i++) {
+                data.writeInt(first);
+                while (first < numSpawns && spawns.get(first)[3] == i) {
+                    first++;
+                }
+            }
+            data.writeInt(first);
+            for (int i=0; i<numSpawns; i++) {
+                int[] spawn = spawns.get(i);
+                data.writeByte(spawn[0]);
+                data.writeInt(spawn[1]);
+                data.writeInt(spawn[2]);
+            }
+            tiles.writeTo(data);
+        }
+        finally {
+            data.close();
+        }
+    }
+
+
+    /**
+        Writes the tile ids from x to toX as (run length, id) byte
+        pairs.
+    */
+    private static void writeRuns(ByteArrayOutputStream out,
+        int[] ids, int x, int toX)
+    {
+        while (x < toX) {
+            int run = 1;
+            while (x + run < toX && run < MAX_RUN &&
+                ids[x + run] == ids[x])
+            {
+                run++;
+            }
+            out.write(run);
+            out.write(ids[x]);
+            x += run;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package tilegame;
+
+import java.io.*;
+
+/**
+    A MapFile is a ChunkSource that streams sections of a text
+    map file (see maps/map1.txt) from disk. Opening a MapFile
+    reads through the file once to find where each line starts
+    and to count the baddies, without keeping any of the lines;
+    loading a chunk then only reads the part of each line that
+    falls inside the chunk.
+*/
+public class MapFile implements ChunkSource {
+
+    private String filename;
+    private ResourceManager resourceManager;
+    private long[] lineOffsets;
+    private int[] lineLengths;
+    private int width;
+    private int height;
+    private int numBaddies;
+
+    /**
+        Opens the specified map file. Tiles and Sprites are
+        created from the host images and Sprites in the
+        specified ResourceManager.
+    */
+    public MapFile(String filename, ResourceManager resourceManager)
+        throws IOException
+    {
+        this.filename = filename;
+        this.resourceManager = resourceManager;
+        index();
+    }
+
+
+    /**
+        Gets the width of the map (number of tiles across).
+    */
+    public int getWidth() {
+        return width;
+    }
+
+
+    /**
+        Gets the height of the map (number of tiles down).
+    */
+    public int getHeight() {
+        return height;
+    }
+
+
+    /**
+        Gets the number of baddies in the whole map.
+    */
+    public int getNumBaddies() {
+        return numBaddies;
+    }
+
+
+    /**
+        Reads through the file, recording the offset and length
+        of every line that isn't a comment.
+    */
+    private void index() throws IOException {
+        long[] offsets = new long[64];
+        int[] lengths = new int[64];
+        int numLines = 0;
+
+        InputStream in = new BufferedInputStream(
+            new FileInputStream(filename));
+        try {
+            long offset = 0;
+            long lineStart = 0;
+            int length = 0;
+            boolean comment = false;
+            int b;
+            while (true) {
+                b = in.read();
+                if (b == '\n' || b == -1) {
+                    // skip the empty line after a trailing newline
+                    if (b == -1 && offset == lineStart) {
+                        break;
+                    }
+                    if (!comment) {
+                        if (numLines == offsets.length) {
+                            offsets = grow(offsets);
+                            lengths = grow(lengths);
+                        }
+                        offsets[numLines] = lineStart;
+                        lengths[numLines] = length;
+                        numLines++;
+                        width = Math.max(width, length);
+                    }
+                    if (b == -1) {
+                        break;
+                    }
+                    offset++;
+                    lineStart = offset;
+                    length = 0;
+                    comment = false;
+                    continue;
+                }
+                if (offset == lineStart && b == '#') {
+                    comment = true;
+                }
+                if (b != '\r') {
+                    length = (int)(offset - lineStart) + 1;
+                }
+                if (!comment && resourceManager.isBaddie((char)b)) {
+                    numBaddies++;
+                }
+                offset++;
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        height = numLines;
+        lineOffsets = offsets;
+        lineLengths = lengths;
+    }
+
+
+    public void loadChunk(TileMap map, int tileX, int tileY,
+        int size, boolean spawnSprites) throws IOException
+    {
+        byte[] buffer = new byte[size];
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            int toY = Math.min(tileY + size, height);
+            for (int y=tileY; y<toY; y++) {
+                int count = Math.min(size, lineLengths[y] - tileX);
+                if (count <= 0) {
+                    continue;
+                }
+                file.seek(lineOffsets[y] + tileX);
+                file.readFully(buffer, 0, count);
+                for (int i=0; i<count; i++) {
+                    resourceManager.placeTile(map, (char)buffer[i],
+                        tileX + i, y, spawnSprites);
+                }
+            }
+        }
+        finally {
+            file.close();
+        }
+    }
+
+
+    private static long[] grow(long[] array) {
+        long[] newArray = new long[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+
+    private static int[] grow(int[] array) {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
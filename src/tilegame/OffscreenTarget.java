@@ -0,0 +1,52 @@
+package tilegame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+    An OffscreenTarget is a BufferedImage that a TileMapRenderer
+    can draw frames into instead of the screen. It works with
+    java.awt.headless=true, so rendering can be benchmarked and
+    checked on machines with no display.
+*/
+public class OffscreenTarget {
+
+    private BufferedImage image;
+
+    /**
+        Creates a new OffscreenTarget of the specified size. Like
+        the screen, the image is opaque.
+    */
+    public OffscreenTarget(int width, int height) {
+        image = new BufferedImage(width, height,
+            BufferedImage.TYPE_INT_RGB);
+    }
+
+
+    /**
+        Gets the image frames are drawn into.
+    */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+
+    /**
+        Draws one frame of the specified map into the image.
+    */
+    public void draw(TileMapRenderer renderer, TileMap map) {
+        Graphics2D g = image.createGraphics();
+        renderer.draw(g, map, image.getWidth(), image.getHeight());
+        g.dispose();
+    }
+}
@@ -0,0 +1,275 @@
+package tilegame;
+
+import java.awt.*;
+
+/**
+    The ParallaxBackground class draws layers of background
+    images that scroll slower than the map, the farthest layer
+    slowest. Each layer is repeated horizontally if it's
+    narrower than the screen.
+    <p>
+    Layers are copied into images compatible with the screen the
+    first time they're drawn. Far layers often don't move from
+    one frame to the next, so the farthest layers that haven't
+    moved for two frames in a row are composited into a single
+    screen-sized image and drawn with one drawImage() until one
+    of them moves. The composite image is kept (and redrawn as
+    needed) until the screen size or GraphicsConfiguration
+    changes.
+*/
+public class ParallaxBackground {
+
+    /**
+        The default scroll divisors, from the farthest layer to
+        the nearest. A layer with a divisor of 4 scrolls a
+        quarter as far as it would at full speed.
+    */
+    public static final int[] DEFAULT_DIVISORS = { 7, 5, 4, 3, 2 };
+
+    // composite at least this many unmoving layers
+    private static final int MIN_COMPOSITE_LAYERS = 2;
+
+    private Image[] layers = new Image[0];
+    private int[] divisors = new int[0];
+    private Image[] compatibleLayers;
+    private GraphicsConfiguration gc;
+
+    private int[] offsets = new int[0];
+    private int[] lastOffsets = new int[0];
+    private int lastNumStill;
+
+    private Image composite;
+    private int compositeCount;
+    private int[] compositeOffsets = new int[0];
+    private int compositeWidth;
+    private int compositeHeight;
+
+    /**
+        Sets the layers to draw, from the farthest to the nearest,
+        using DEFAULT_DIVISORS. Layers past the end of
+        DEFAULT_DIVISORS use the last divisor. Null images and
+        images that failed to load are skipped.
+    */
+    public void setLayers(Image[] layers) {
+        int[] divisors = new int[layers.length];
+        for (int i=0; i<layers.length; i++) {
+            divisors[i] = DEFAULT_DIVISORS[
+                Math.min(i, DEFAULT_DIVISORS.length - 1)];
+        }
+        setLayers(layers, divisors);
+    }
+
+
+    /**
+        Sets the layers to draw, from the farthest to the nearest,
+        and the scroll divisor of each layer. Null images and
+        images that failed to load are skipped.
+    */
+    public void setLayers(Image[] layers, int[] divisors) {
+        int count = 0;
+        for (int i=0; i<layers.length; i++) {
+            if (isLoaded(layers[i])) {
+                count++;
+            }
+        }
+        this.layers = new Image[count];
+        this.divisors = new int[count];
+        count = 0;
+        for (int i=0; i<layers.length; i++) {
+            if (isLoaded(layers[i])) {
+                this.layers[count] = layers[i];
+                this.divisors[count] = Math.max(divisors[i], 1);
+                count++;
+            }
+        }
+        offsets = new int[count];
+        lastOffsets = new int[count];
+        compositeOffsets = new int[count];
+        lastNumStill = 0;
+        compatibleLayers = null;
+        flushComposite();
+    }
+
+
+    /**
+        Gets the number of layers.
+    */
+    public int getNumLayers() {
+        return layers.length;
+    }
+
+
+    /**
+        Draws the background for a map of the specified width (in
+        pixels) scrolled by offsetX, on a screen of the specified
+        size.
+    */
+    public void draw(Graphics2D g, int offsetX, int mapWidth,
+        int screenWidth, int screenHeight)
+    {
+        GraphicsConfiguration newGc = g.getDeviceConfiguration();
+        if (compatibleLayers == null || newGc != gc) {
+            gc = newGc;
+            createCompatibleLayers();
+        }
+        if (screenWidth != compositeWidth ||
+            screenHeight != compositeHeight)
+        {
+            flushComposite();
+        }
+
+        // find where each layer is, and how many of the farthest
+        // layers haven't moved since the last frame
+        int numStill = 0;
+        boolean still = true;
+        for (int i=0; i<layers.length; i++) {
+            offsets[i] = getLayerOffset(i, offsetX, mapWidth,
+                screenWidth);
+            still &= (offsets[i] == lastOffsets[i]);
+            if (still) {
+                numStill++;
+            }
+        }
+        System.arraycopy(offsets, 0, lastOffsets, 0, offsets.length);
+
+        // draw the far layers from the composite if they're where
+        // they were when it was made, or redraw it if enough of
+        // them have stood still for two frames. when scrolling
+        // slowly, far layers move every other frame, and aren't
+        // worth compositing
+        int numSteady = Math.min(numStill, lastNumStill);
+        lastNumStill = numStill;
+        int first = 0;
+        if (compositeCount > 0 && matchesComposite()) {
+            first = compositeCount;
+        }
+        else if (numSteady >= MIN_COMPOSITE_LAYERS) {
+            createComposite(numSteady, screenWidth, screenHeight);
+            first = compositeCount;
+        }
+        else {
+            // keep the image for the next time
+            compositeCount = 0;
+        }
+
+        if (first > 0) {
+            g.drawImage(composite, 0, 0, null);
+        }
+        else if (layers.length == 0 ||
+            screenHeight > layers[0].getHeight(null))
+        {
+            g.setColor(Color.black);
+            g.fillRect(0, 0, screenWidth, screenHeight);
+        }
+        for (int i=first; i<layers.length; i++) {
+            drawLayer(g, i, screenWidth, screenHeight);
+        }
+    }
+
+
+    /**
+        Gets the horizontal position of a layer. A layer as wide
+        as the map would scroll with the map, a layer as wide as
+        the screen wouldn't scroll at all, and then the result is
+        slowed down by the layer's divisor.
+    */
+    private int getLayerOffset(int layer, int offsetX, int mapWidth,
+        int screenWidth)
+    {
+        // a map no wider than the screen doesn't scroll
+        if (mapWidth == screenWidth) {
+            return 0;
+        }
+        int x = offsetX *
+            (screenWidth - layers[layer].getWidth(null)) /
+            (screenWidth - mapWidth);
+        return x / divisors[layer];
+    }
+
+
+    private void drawLayer(Graphics g, int layer, int screenWidth,
+        int screenHeight)
+    {
+        Image image = compatibleLayers[layer];
+        int width = image.getWidth(null);
+        int y = screenHeight - image.getHeight(null);
+
+        // repeat the layer across the screen
+        int x = offsets[layer] % width;
+        if (x > 0) {
+            x -= width;
+        }
+        for (; x < screenWidth; x += width) {
+            g.drawImage(image, x, y, null);
+        }
+    }
+
+
+    private boolean matchesComposite() {
+        for (int i=0; i<compositeCount; i++) {
+            if (offsets[i] != compositeOffsets[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void createComposite(int count, int screenWidth,
+        int screenHeight)
+    {
+        if (composite == null) {
+            composite = gc.createCompatibleImage(screenWidth,
+                screenHeight, Transparency.OPAQUE);
+            compositeWidth = screenWidth;
+            compositeHeight = screenHeight;
+        }
+        Graphics2D g = (Graphics2D)composite.getGraphics();
+        g.setColor(Color.black);
+        g.fillRect(0, 0, screenWidth, screenHeight);
+        for (int i=0; i<count; i++) {
+            drawLayer(g, i, screenWidth, screenHeight);
+        }
+        g.dispose();
+
+        compositeCount = count;
+        System.arraycopy(offsets, 0, compositeOffsets, 0, count);
+    }
+
+
+    private void flushComposite() {
+        if (composite != null) {
+            composite.flush();
+            composite = null;
+        }
+        compositeCount = 0;
+        compositeWidth = 0;
+        compositeHeight = 0;
+    }
+
+
+    /**
+        Copies each layer into an image compatible with the
+        destination, so drawing it can be accelerated.
+    */
+    private void createCompatibleLayers() {
+        compatibleLayers = new Image[layers.length];
+        for (int i=0; i<layers.length; i++) {
+            int width = layers[i].getWidth(null);
+            int height = layers[i].getHeight(null);
+            Image image = gc.createCompatibleImage(width, height,
+                Transparency.TRANSLUCENT);
+            Graphics g = image.getGraphics();
+            g.drawImage(layers[i], 0, 0, null);
+            g.dispose();
+            compatibleLayers[i] = image;
+        }
+        flushComposite();
+    }
+
+
+    private static boolean isLoaded(Image image) {
+        return (image != null && image.getWidth(null) > 0 &&
+            image.getHeight(null) > 0);
+    }
+}
@@ -0,0 +1,295 @@
+package tilegame;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+import tilegame.sprites.Player;
+
+/**
+    The RenderBenchmark draws every map into an OffscreenTarget
+    without a display, moving the camera along a scripted path,
+    and reports frames per second and the time spent in each
+    phase of drawing.
+    <p>
+    It can also save a few frames of each map as golden images,
+    and later compare the same frames against them to catch
+    rendering changes. The golden images in GOLDEN_DIR are kept
+    in the repository, so any machine can compare against them;
+    record them again only when a rendering change is meant.
+    Golden frames are always taken from runs of GOLDEN_FRAMES
+    frames, and are drawn without the HUD, whose text depends on
+    the fonts installed. Pixels may differ by CHANNEL_TOLERANCE in
+    each color channel, to allow for Java2D pipelines that round
+    blending differently, and up to MAX_DIFFERENT_PIXELS pixels
+    may differ by more.
+    <p>
+    Usage: <code>java tilegame.RenderBenchmark [frames]
+    [record|compare [dir]]</code>
+*/
+public class RenderBenchmark {
+
+    private static final int DEFAULT_FRAMES = 600;
+    private static final int WARMUP_FRAMES = 100;
+    private static final int SCREEN_WIDTH = 1024;
+    private static final int SCREEN_HEIGHT = 768;
+
+    // number of frames of each map saved as golden images, out
+    // of a run of GOLDEN_FRAMES frames
+    private static final int NUM_GOLDEN_FRAMES = 4;
+    private static final int GOLDEN_FRAMES = 200;
+
+    /**
+        The directory of golden images, relative to the game's
+        directory.
+    */
+    public static final String GOLDEN_DIR = "golden";
+
+    private static final int CHANNEL_TOLERANCE = 8;
+    private static final int MAX_DIFFERENT_PIXELS = 16;
+
+    private static final String[] PHASE_NAMES = {
+        "capture", "background", "tiles", "sprites", "hud"
+    };
+
+    private GameManager game;
+    private ResourceManager resourceManager;
+    private TileMapRenderer renderer;
+    private OffscreenTarget target;
+    private File goldenDir;
+    private boolean record;
+    private int mismatches;
+
+
+    public static void main(String[] args) throws IOException {
+        // must be set before any AWT class is touched
+        System.setProperty("java.awt.headless", "true");
+
+        int frames = (args.length > 0) ?
+            Integer.parseInt(args[0]) : DEFAULT_FRAMES;
+        RenderBenchmark benchmark = new RenderBenchmark();
+        if (args.length > 1) {
+            benchmark.setGolden(new File(args.length > 2 ?
+                args[2] : GOLDEN_DIR), args[1].equals("record"));
+        }
+        benchmark.run(frames);
+        if (benchmark.getMismatches() > 0) {
+            System.exit(1);
+        }
+    }
+
+
+    /**
+        Creates a new RenderBenchmark with its own game and
+        renderer.
+    */
+    public RenderBenchmark() {
+        resourceManager = new ResourceManager(null);
+        game = new GameManager();
+        game.initHeadless(resourceManager, SCREEN_WIDTH);
+        renderer = new TileMapRenderer(game);
+        target = new OffscreenTarget(SCREEN_WIDTH, SCREEN_HEIGHT);
+    }
+
+
+    /**
+        Sets the directory of golden images. If record is true,
+        golden images are saved there; otherwise frames are
+        compared against them.
+    */
+    public void setGolden(File goldenDir, boolean record) {
+        this.goldenDir = goldenDir;
+        this.record = record;
+    }
+
+
+    /**
+        Gets the number of frames that didn't match their golden
+        images.
+    */
+    public int getMismatches() {
+        return mismatches;
+    }
+
+
+    /**
+        Draws the specified number of frames of each map.
+    */
+    public void run(int frames) throws IOException {
+        if (goldenDir != null && record) {
+            goldenDir.mkdirs();
+        }
+        if (goldenDir != null && frames != GOLDEN_FRAMES) {
+            System.out.println("Drawing " + GOLDEN_FRAMES +
+                " frames of each map for the golden images");
+            frames = GOLDEN_FRAMES;
+        }
+
+        // let the JIT compiler warm up on the first map
+        resourceManager.reset();
+        TileMap map = resourceManager.loadNextMap();
+        if (map == null) {
+            System.out.println("No maps to load!");
+            return;
+        }
+        map.loadAllChunks();
+        for (int i=0; i<WARMUP_FRAMES; i++) {
+            drawFrame(map, i, WARMUP_FRAMES);
+        }
+
+        // draw each map in turn, until the maps wrap around
+        resourceManager.reset();
+        map = resourceManager.loadNextMap();
+        int mapNum = resourceManager.getCurrentMap();
+        long totalFrames = 0;
+        long totalNanos = 0;
+        do {
+            map.loadAllChunks();
+            totalNanos += runMap(map, mapNum, frames);
+            totalFrames += frames;
+
+            map = resourceManager.loadNextMap();
+            int nextMapNum = resourceManager.getCurrentMap();
+            if (nextMapNum <= mapNum) {
+                break;
+            }
+            mapNum = nextMapNum;
+        }
+        while (map != null);
+
+        double seconds = totalNanos / 1e9;
+        System.out.println("total: " + totalFrames + " frames in " +
+            Math.round(seconds * 1000) + "ms (" +
+            Math.round(totalFrames / seconds) + " fps)");
+        if (goldenDir != null && !record) {
+            System.out.println(mismatches + " golden frames differ");
+        }
+    }
+
+
+    /**
+        Draws a number of frames of one map and reports the
+        timings. Returns the total time taken, in nanoseconds.
+    */
+    private long runMap(TileMap map, int mapNum, int frames)
+        throws IOException
+    {
+        renderer.resetTimings();
+        renderer.setTimingEnabled(true);
+        long startTime = System.nanoTime();
+        for (int i=0; i<frames; i++) {
+            drawFrame(map, i, frames);
+            if (goldenDir != null &&
+                i % Math.max(frames / NUM_GOLDEN_FRAMES, 1) == 0)
+            {
+                checkGolden(map, mapNum, i, frames);
+            }
+        }
+        long elapsed = System.nanoTime() - startTime;
+        renderer.setTimingEnabled(false);
+
+        double seconds = elapsed / 1e9;
+        StringBuffer report = new StringBuffer();
+        report.append("map" + mapNum + ": " + frames +
+            " frames in " + Math.round(seconds * 1000) + "ms (" +
+            Math.round(frames / seconds) + " fps)");
+        for (int i=0; i<PHASE_NAMES.length; i++) {
+            double ms = renderer.getPhaseNanos(i) / 1e6 / frames;
+            report.append(", " + PHASE_NAMES[i] + " " +
+                Math.round(ms * 1000) / 1000.0 + "ms");
+        }
+        System.out.println(report);
+        return elapsed;
+    }
+
+
+    /**
+        Moves the player (and so the camera) to where it should be
+        on the specified frame and draws the frame. The camera
+        goes across the map and back, bobbing up and down.
+    */
+    private void drawFrame(TileMap map, int frame, int frames) {
+        int mapWidth = TileMapRenderer.tilesToPixels(map.getWidth());
+        int mapHeight = TileMapRenderer.tilesToPixels(
+            map.getHeight());
+        float t = (float)frame / Math.max(frames - 1, 1);
+        float across = (t < 0.5f) ? t * 2 : (1 - t) * 2;
+
+        Player player = map.getPlayer();
+        player.setX(across * (mapWidth - player.getWidth()));
+        player.setY(mapHeight - TileMapRenderer.tilesToPixels(2) -
+            (float)Math.abs(Math.sin(t * Math.PI * 4)) *
+            TileMapRenderer.tilesToPixels(4));
+        player.savePosition();
+
+        target.draw(renderer, map);
+    }
+
+
+    /**
+        Saves the current frame as a golden image, or compares it
+        with the saved one.
+    */
+    private void checkGolden(TileMap map, int mapNum, int frame,
+        int frames) throws IOException
+    {
+        File file = new File(goldenDir,
+            "map" + mapNum + "_" + frame + ".png");
+
+        // draw the frame again without the HUD
+        renderer.setHudEnabled(false);
+        drawFrame(map, frame, frames);
+        renderer.setHudEnabled(true);
+        BufferedImage image = target.getImage();
+        if (record) {
+            ImageIO.write(image, "png", file);
+            return;
+        }
+
+        if (!file.exists()) {
+            System.out.println("missing golden image: " + file);
+            mismatches++;
+            return;
+        }
+        BufferedImage golden = ImageIO.read(file);
+        int diff = countDifferentPixels(image, golden);
+        if (diff > MAX_DIFFERENT_PIXELS) {
+            System.out.println(file.getName() + ": " + diff +
+                " pixels differ");
+            mismatches++;
+        }
+    }
+
+
+    /**
+        Counts the pixels that differ by more than
+        CHANNEL_TOLERANCE in any color channel.
+    */
+    private static int countDifferentPixels(BufferedImage a,
+        BufferedImage b)
+    {
+        if (a.getWidth() != b.getWidth() ||
+            a.getHeight() != b.getHeight())
+        {
+            return a.getWidth() * a.getHeight();
+        }
+        int count = 0;
+        for (int y=0; y<a.getHeight(); y++) {
+            for (int x=0; x<a.getWidth(); x++) {
+                // ignore alpha; the golden PNG may have none
+                int rgbA = a.getRGB(x, y);
+                int rgbB = b.getRGB(x, y);
+                for (int shift=0; shift<24; shift+=8) {
+                    int diff = ((rgbA >> shift) & 0xff) -
+                        ((rgbB >> shift) & 0xff);
+                    if (Math.abs(diff) > CHANNEL_TOLERANCE) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,261 @@
+package tilegame;
+
+import java.awt.Image;
+
+import graphics.Sprite;
+import graphics.TextureAtlas;
+
+/**
+    A RenderSnapshot is a copy of everything TileMapRenderer
+    needs to draw one frame: the tiles near the screen, sprite
+    images and positions, and the values shown on the HUD. The simulation fills in a snapshot
+    after its ticks, and the renderer draws from it, possibly on
+    another thread while the simulation goes on changing the
+    real sprites.
+    <p>
+    Snapshots are meant to be reused; the tile and sprite arrays
+    only grow.
+*/
+public class RenderSnapshot {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+        Identifies the map the snapshot was taken from: it
+        changes whenever the map does, and is 0 if no snapshot
+        has been taken yet.
+    */
+    public int mapId;
+
+    // the size of the map, in tiles
+    public int mapWidth;
+    public int mapHeight;
+
+    // the tiles of the blocks (see TileMap.BLOCK_SIZE) that may
+    // be drawn, and the blocks' versions
+    public int fromBlockX;
+    public int fromBlockY;
+    public int blocksAcross;
+    public int blocksDown;
+    public int[] blockVersions;
+    public Image[] tiles;
+
+    /**
+        How far the simulation was between ticks when the
+        snapshot was taken, from 0 to 1; the System.nanoTime()
+        when it was taken; and the length of a tick, in
+        nanoseconds. Together these give the interpolation for a
+        frame drawn a little later.
+    */
+    public float interpolation;
+    public long captureTime;
+    public long tickNanos;
+
+    // the player, at the previous and latest tick
+    public Image playerImage;
+    public TextureAtlas.Region playerRegion;
+    public float playerPrevX;
+    public float playerPrevY;
+    public float playerX;
+    public float playerY;
+
+    // the other sprites, at the previous and latest tick
+    public int numSprites;
+    public Image[] images;
+    public TextureAtlas.Region[] regions;
+    public float[] prevX;
+    public float[] prevY;
+    public float[] x;
+    public float[] y;
+
+    // HUD values
+    public int secondsPassed;
+    public int level;
+    public int health;
+    public int maxHP;
+    public int damage;
+    public int score;
+    public int exp;
+    public int toNextLevel;
+    public int numBaddies;
+    public int doneTime;
+    public boolean win;
+    public boolean gameOver;
+
+    // debug overlay values
+    public boolean debug;
+    public float playerVelocityX;
+    public float playerVelocityY;
+    public boolean onGround;
+    public boolean jumped;
+    public boolean facingLeft;
+    public boolean facingRight;
+    public String playerState;
+    public int totalSprites;
+    public long updateNanos;
+
+
+    /**
+        Creates a new, empty RenderSnapshot.
+    */
+    public RenderSnapshot() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+
+    /**
+        Gets the interpolation for a frame drawn at the
+        specified System.nanoTime(): the interpolation when the
+        snapshot was taken, plus the time since then, up to 1.
+    */
+    public float getInterpolation(long time) {
+        if (tickNanos <= 0) {
+            return interpolation;
+        }
+        float alpha = interpolation +
+            (float)(time - captureTime) / tickNanos;
+        return Math.max(0, Math.min(alpha, 1));
+    }
+
+
+    /**
+        Copies the tiles and versions of the blocks from
+        (fromBlockX, fromBlockY) to (toBlockX, toBlockY),
+        inclusive, from the specified map.
+    */
+    public void setTiles(TileMap map, int fromBlockX, int fromBlockY,
+        int toBlockX, int toBlockY)
+    {
+        this.fromBlockX = fromBlockX;
+        this.fromBlockY = fromBlockY;
+        blocksAcross = Math.max(toBlockX - fromBlockX + 1, 0);
+        blocksDown = Math.max(toBlockY - fromBlockY + 1, 0);
+        int numBlocks = blocksAcross * blocksDown;
+        int numTiles = numBlocks << (TileMap.BLOCK_BITS * 2);
+        if (blockVersions == null || blockVersions.length < numBlocks) {
+            blockVersions = new int[numBlocks];
+        }
+        if (tiles == null || tiles.length < numTiles) {
+            tiles = new Image[numTiles];
+        }
+
+        for (int by=0; by<blocksDown; by++) {
+            for (int bx=0; bx<blocksAcross; bx++) {
+                blockVersions[by * blocksAcross + bx] =
+                    map.getBlockVersion(fromBlockX + bx, fromBlockY + by);
+            }
+        }
+        int fromTileX = fromBlockX << TileMap.BLOCK_BITS;
+        int fromTileY = fromBlockY << TileMap.BLOCK_BITS;
+        int tilesAcross = blocksAcross << TileMap.BLOCK_BITS;
+        int tilesDown = blocksDown << TileMap.BLOCK_BITS;
+        for (int y=0; y<tilesDown; y++) {
+            for (int x=0; x<tilesAcross; x++) {
+                tiles[y * tilesAcross + x] =
+                    map.getTile(fromTileX + x, fromTileY + y);
+            }
+        }
+    }
+
+
+    /**
+        Gets a tile copied by setTiles(), or null if the tile is
+        empty or wasn't copied.
+    */
+    public Image getTile(int x, int y) {
+        x -= fromBlockX << TileMap.BLOCK_BITS;
+        y -= fromBlockY << TileMap.BLOCK_BITS;
+        int tilesAcross = blocksAcross << TileMap.BLOCK_BITS;
+        if (x < 0 || x >= tilesAcross || y < 0 ||
+            y >= blocksDown << TileMap.BLOCK_BITS)
+        {
+            return null;
+        }
+        return tiles[y * tilesAcross + x];
+    }
+
+
+    /**
+        Gets the version of a block copied by setTiles(), or 0 if
+        the block wasn't copied.
+    */
+    public int getBlockVersion(int blockX, int blockY) {
+        blockX -= fromBlockX;
+        blockY -= fromBlockY;
+        if (blockX < 0 || blockX >= blocksAcross || blockY < 0 ||
+            blockY >= blocksDown)
+        {
+            return 0;
+        }
+        return blockVersions[blockY * blocksAcross + blockX];
+    }
+
+
+    /**
+        Sets the player's image and positions.
+    */
+    public void setPlayer(Sprite player) {
+        playerImage = player.getImage();
+        playerRegion = player.getRegion();
+        playerPrevX = player.getInterpolatedX(0);
+        playerPrevY = player.getInterpolatedY(0);
+        playerX = player.getX();
+        playerY = player.getY();
+    }
+
+
+    /**
+        Removes all the sprites from this snapshot.
+    */
+    public void clearSprites() {
+        // let go of images no longer in the snapshot
+        for (int i=0; i<numSprites; i++) {
+            images[i] = null;
+            regions[i] = null;
+        }
+        numSprites = 0;
+    }
+
+
+    /**
+        Adds a sprite's image and positions to this snapshot.
+    */
+    public void addSprite(Sprite sprite) {
+        if (numSprites == images.length) {
+            allocate(numSprites * 2);
+        }
+        int i = numSprites++;
+        images[i] = sprite.getImage();
+        regions[i] = sprite.getRegion();
+        prevX[i] = sprite.getInterpolatedX(0);
+        prevY[i] = sprite.getInterpolatedY(0);
+        x[i] = sprite.getX();
+        y[i] = sprite.getY();
+    }
+
+
+    private void allocate(int capacity) {
+        Image[] newImages = new Image[capacity];
+        TextureAtlas.Region[] newRegions =
+            new TextureAtlas.Region[capacity];
+        if (images != null) {
+            System.arraycopy(images, 0, newImages, 0, numSprites);
+            System.arraycopy(regions, 0, newRegions, 0, numSprites);
+        }
+        images = newImages;
+        regions = newRegions;
+        prevX = grow(prevX, capacity);
+        prevY = grow(prevY, capacity);
+        x = grow(x, capacity);
+        y = grow(y, capacity);
+    }
+
+
+    private float[] grow(float[] array, int capacity) {
+        float[] newArray = new float[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, numSprites);
+        }
+        return newArray;
+    }
+}
@@ -1,12 +1,17 @@
 package tilegame;
 
 import java.awt.*;
-import java.awt.geom.AffineTransform;
 import java.io.*;
 import java.util.ArrayList;
-import javax.swing.ImageIcon;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.sound.sampled.AudioFormat;
 
 import graphics.*;
+import sound.Sound;
 import tilegame.sprites.*;
 
 
@@ -17,7 +22,7 @@ import tilegame.sprites.*;
 */
 public class ResourceManager {
 
-    private ArrayList tiles;
+    private ArrayList<Image> tiles;
     private int currentMap = 0;
     public int numBaddies = 0;
     private GraphicsConfiguration gc;
@@ -33,112 +38,172 @@ public class ResourceManager {
     private Sprite flySprite;
     private Creep_Fly creep_fly;
     private Creep_Zombie creep_zombie;
+    // every host Animation, and the atlas holding their frames
+    // and the tiles
+    private ArrayList<Animation> animations = new ArrayList<Animation>();
+    private TextureAtlas atlas;
+    // pools of sprites cloned from each host sprite, by class
+    private HashMap<Class<?>, SpritePool> spritePools =
+        new HashMap<Class<?>, SpritePool>();
+    // the host Sprite for each map character, or null
+    private Sprite[] spawnHosts = new Sprite[128];
+    // decodes and transforms images in parallel, and the steps
+    // that build host sprites once their images are ready
+    private AssetLoader loader;
+    private AssetBundle bundle;
+    private ArrayList<Runnable> pendingBuilds = new ArrayList<Runnable>();
+    // builds the next map while the current one is played
+    private ThreadPoolExecutor mapLoader;
+    private CompletableFuture<LoadedMap> nextMap;
     public String imgExt = ".png";
     public String imgExtGif = ".gif";
 
     /**
         Creates a new ResourceManager with the specified
-        GraphicsConfiguration.
+        GraphicsConfiguration, taking images from the
+        AssetBundle.DEFAULT_FILE bundle if there is one. If gc is
+        null (for example, when running headless), generated
+        images are plain BufferedImages.
     */
     public ResourceManager(GraphicsConfiguration gc) {
+        this(gc, AssetBundle.open(new File(AssetBundle.DEFAULT_FILE)));
+    }
+
+
+    /**
+        Creates a new ResourceManager with the specified
+        GraphicsConfiguration, taking images and sounds from the
+        specified AssetBundle, or from their files if bundle is
+        null.
+        <p>
+        All the images are decoded, mirrored and flipped in
+        parallel by an AssetLoader; the host sprites are built in
+        order as their images become ready.
+    */
+    public ResourceManager(GraphicsConfiguration gc,
+        AssetBundle bundle)
+    {
         this.gc = gc;
+        this.bundle = bundle;
+        loader = new AssetLoader(gc);
+        loader.setBundle(bundle);
         loadTileImages();
         loadCreatureSprites();
         loadPowerUpSprites();
+        finishLoading();
+        buildSpawnHosts();
+        loader.printReport();
+        buildAtlas();
         player = (Player) playerSprite.clone();
+
+        mapLoader = new ThreadPoolExecutor(1, 1,
+            1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "MapLoader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        mapLoader.allowCoreThreadTimeOut(true);
     }
 
+
     /**
-        Gets an image from the images/ directory.
+        Starts over from the first map with a brand new player.
     */
-    public Image loadImage(String name) {
-	String filename = "images/" + name;
-        //String filename = "images/" + name;
-
-            File file = new File(filename);
-            if (!file.exists()) {
-                System.out.println("Image file could not be opened: " + filename);
-            }
-            else
-                System.out.println("Image file opened: " + filename);
+    public void reset() {
+        discardNextMap();
+        currentMap = 0;
+        numBaddies = 0;
+        player = (Player) playerSprite.clone();
+    }
 
-        return new ImageIcon(filename).getImage();
+    /**
+        Gets an image from the images/ directory, waiting for it
+        to be decoded. Returns null if the image can't be read.
+        The image is shared with every other load of the same
+        file.
+    */
+    public Image loadImage(String name) {
+        return loader.loadImage(name).join();
     }
     /**
-        Gets an image from the images/ directory.
+        Gets a GIF image from the images/ directory. Animated
+        GIFs keep their animation.
     */
     public Image loadGif(String name) {
-	String filename = "images/" + name;
-        //String filename = "images/" + name;
-
-            File file = new File(filename);
-            if (!file.exists()) {
-                System.out.println("Image file could not be opened: " + filename);
-            }
-            else
-                System.out.println("Image file opened: " + filename);
-
-        return new ImageIcon(filename).getImage();
+        return loadImage(name);
     }
 
 
-    public Image getMirrorImage(Image image) {
-        return getScaledImage(image, -1, 1);
+    /**
+        Gets a sound from the AssetBundle, or null if there is no
+        bundle or it doesn't have the sound in the specified
+        format.
+    */
+    public Sound getBundledSound(String path, AudioFormat format) {
+        return (bundle != null) ? bundle.getSound(path, format) : null;
     }
 
 
-    public Image getFlippedImage(Image image) {
-        return getScaledImage(image, 1, -1);
+    /**
+        Gets the cache of images loaded by path.
+    */
+    public ImageCache getImageCache() {
+        return loader.getCache();
     }
 
 
-    private Image getScaledImage(Image image, float x, float y) {
-
-        // set up the transform
-        AffineTransform transform = new AffineTransform();
-        transform.scale(x, y);
-        transform.translate(
-            (x-1) * image.getWidth(null) / 2,
-            (y-1) * image.getHeight(null) / 2);
-
-        // create a transparent (not translucent) image
-        Image newImage = gc.createCompatibleImage(
-            image.getWidth(null),
-            image.getHeight(null),
-            Transparency.BITMASK);
+    /**
+        Gets a left-right mirror of an image from the images/
+        directory, waiting for it to be made. The mirror is made
+        once and shared, like the image itself.
+    */
+    public Image getMirrorImage(String name) {
+        return loader.loadImage(name, ImageCache.MIRROR).join();
+    }
 
-        // draw the transformed image
-        Graphics2D g = (Graphics2D)newImage.getGraphics();
-        g.drawImage(image, transform, null);
-        g.dispose();
 
-        return newImage;
+    /**
+        Gets an upside-down copy of an image from the images/
+        directory, waiting for it to be made. The copy is made
+        once and shared, like the image itself.
+    */
+    public Image getFlippedImage(String name) {
+        return loader.loadImage(name, ImageCache.FLIP).join();
     }
 
 
+    /**
+        Advances to the next map (wrapping around to the first
+        one after the last) and returns it, with the player at
+        its start. The map has usually been built in the
+        background while the previous map was played, so this
+        returns right away; otherwise it's built now. Returns
+        null if there are no maps.
+    */
     public TileMap loadNextMap() {
-        TileMap map = null;
-        while (map == null) {
-            currentMap++;
-   	    String mapFile = "maps/map" + currentMap + ".txt";
-            try {		
-		map = loadMap(mapFile);
-/*
-                map = loadMap(
-                    "maps/map" + currentMap + ".txt");
-*/
+        LoadedMap next = null;
+        if (nextMap != null) {
+            try {
+                next = nextMap.join();
             }
-            catch (IOException ex) {
-		System.out.println ("Could not find map to load " + mapFile);
-                if (currentMap == 1) {
-                    // no maps to load!
-                    return null;
-                }
-                currentMap = 0;
-                map = null;
+            catch (CompletionException ex) {
+                ex.printStackTrace();
             }
+            nextMap = null;
         }
-
+        if (next == null) {
+            next = buildNextMap(currentMap);
+        }
+        if (next == null) {
+            // no maps to load!
+            return null;
+        }
+        currentMap = next.number;
+        TileMap map = activate(next);
+        preloadNextMap();
         return map;
     }
 
@@ -148,8 +213,7 @@ public class ResourceManager {
 
     public TileMap reloadMap() {
         try {
-            return loadMap(
-                "maps/map" + currentMap + ".txt");
+            return activate(buildMap(currentMap));
         }
         catch (IOException ex) {
             ex.printStackTrace();
@@ -158,80 +222,233 @@ public class ResourceManager {
     }
 
 
-    private TileMap loadMap(String filename)
-        throws IOException
-    {
-        numBaddies = 0;
-        ArrayList lines = new ArrayList();
-        int width = 0;
-        int height = 0;
-
-        // read every line in the text file into the list
-        BufferedReader reader = new BufferedReader(
-            new FileReader(filename));
-        while (true) {
-            String line = reader.readLine();
-            // no more lines to read
-            if (line == null) {
-                reader.close();
-                break;
+    /**
+        Starts building the map after the current one on the
+        map loader thread.
+    */
+    private void preloadNextMap() {
+        final int after = currentMap;
+        nextMap = CompletableFuture.supplyAsync(new Supplier<LoadedMap>() {
+            public LoadedMap get() {
+                return buildNextMap(after);
             }
+        }, mapLoader);
+    }
 
-            // add every line except for comments
-            if (!line.startsWith("#")) {
-                lines.add(line);
-                width = Math.max(width, line.length());
-            }
-        }
 
-        // parse the lines to create a TileEngine
-        height = lines.size();
-        TileMap newMap = new TileMap(width, height);
-        for (int y=0; y<height; y++) {
-            String line = (String)lines.get(y);
-            for (int x=0; x<line.length(); x++) {
-                char ch = line.charAt(x);
-
-                // check if the char represents tile A, B, C etc.
-                int tile = ch - 'A';
-                if (tile >= 0 && tile < tiles.size()) {
-                    newMap.setTile(x, y, (Image)tiles.get(tile));
-                }
-                // check if the char represents a sprite
-                else if (ch == grubSprite.tileID)
-                    addSprite(newMap, grubSprite, x, y);
-                else if (ch == flySprite.tileID)
-                    addSprite(newMap, flySprite, x, y);
-                else if (ch == creep_fly.tileID){
-                    addSprite(newMap, creep_fly, x, y);
-                    numBaddies++;
-                }
-                else if (ch == creep_zombie.tileID)
-                {
-                    addSprite(newMap, creep_zombie, x, y);
-                    numBaddies++;
+    /**
+        Throws away the map being built in the background, if
+        any, returning its Sprites to their pools once it's done.
+    */
+    private void discardNextMap() {
+        if (nextMap != null) {
+            nextMap.thenAccept(new Consumer<LoadedMap>() {
+                public void accept(LoadedMap next) {
+                    if (next != null) {
+                        recycleSprites(next.map);
+                    }
                 }
-                else if (ch == dioSprite.tileID)
-                {
-                    numBaddies++;
-                    addSprite(newMap, dioSprite, x, y);
+            });
+            nextMap = null;
+        }
+    }
+
+
+    /**
+        Builds the first map that can be loaded after the
+        specified map number, wrapping around to map 1 after the
+        last map. Returns null if there are no maps. Safe to call
+        from any thread.
+    */
+    private LoadedMap buildNextMap(int mapNumber) {
+        while (true) {
+            mapNumber++;
+            try {
+                return buildMap(mapNumber);
+            }
+            catch (IOException ex) {
+                System.out.println("Could not find map to load " +
+                    getMapFilename(mapNumber));
+                if (mapNumber == 1) {
+                    // no maps to load!
+                    return null;
                 }
-                else if (ch == heartSprite.tileID)
-                    addSprite(newMap, heartSprite, x, y);
-                else if (ch == musicSprite.tileID)
-                    addSprite(newMap, musicSprite, x, y);
-                else if (ch == goalSprite.tileID)
-                    addSprite(newMap, goalSprite, x, y);
+                mapNumber = 0;
             }
         }
+    }
+
+
+    private static String getMapFilename(int mapNumber) {
+        return "maps/map" + mapNumber + ".txt";
+    }
+
+
+    /**
+        Builds the map with the specified number, with the
+        chunks around the start loaded and their Sprites (except
+        the player) spawned. Only the map's own state and the
+        Sprite pools are touched, so this is safe to call from
+        any thread.
+    */
+    private LoadedMap buildMap(int mapNumber) throws IOException {
+        // the rest of the map streams in from its source as the
+        // player moves, as usual
+        ChunkSource source = openMap(getMapFilename(mapNumber));
+        LoadedMap loaded = new LoadedMap();
+        loaded.number = mapNumber;
+        loaded.numBaddies = source.getNumBaddies();
+        loaded.map = new TileMap(source.getWidth(),
+            source.getHeight(), source, this);
+
+        loaded.map.updateStreaming(3, 0);
+        return loaded;
+    }
+
+
+    /**
+        Makes a built map the current one, putting the player at
+        its start.
+    */
+    private TileMap activate(LoadedMap loaded) {
+        numBaddies = loaded.numBaddies;
 
         // add the player to the map
-        player.setState(player.STATE_NORMAL);
+        player.setState(Creature.STATE_NORMAL);
         player.setX(TileMapRenderer.tilesToPixels(3));
         player.setY(0);
-        newMap.setPlayer(player);
+        player.savePosition();
+        loaded.map.setPlayer(player);
+
+        return loaded.map;
+    }
+
+
+    /**
+        A map built by buildMap(), not yet the current map.
+    */
+    private static class LoadedMap {
+        int number;
+        int numBaddies;
+        TileMap map;
+    }
+
+
+    /**
+        Opens a map for loading in chunks. The compiled version
+        of the map (see MapCompiler) is used if it exists and
+        isn't older than the text map; otherwise the text map is
+        read.
+    */
+    private ChunkSource openMap(String filename) throws IOException {
+        File textFile = new File(filename);
+        File compiledFile =
+            new File(CompiledMap.getCompiledName(filename));
+        if (compiledFile.exists() && (!textFile.exists() ||
+            compiledFile.lastModified() >= textFile.lastModified()))
+        {
+            try {
+                return new CompiledMap(compiledFile, this);
+            }
+            catch (IOException ex) {
+                // fall back to the text map
+                ex.printStackTrace();
+            }
+        }
+        return new MapFile(filename, this);
+    }
+
+
+    /**
+        Checks if the specified map character is a baddie that
+        has to be killed before the goal can be reached.
+    */
+    boolean isBaddie(char ch) {
+        return (ch == creep_fly.tileID ||
+            ch == creep_zombie.tileID ||
+            ch == dioSprite.tileID);
+    }
+
+
+    /**
+        Checks if the specified map character stands for a
+        Sprite.
+    */
+    boolean isSpawn(char ch) {
+        return (ch < spawnHosts.length && spawnHosts[ch] != null);
+    }
+
+
+    /**
+        Gets the number of tile images (tiles A, B, C and so on).
+    */
+    int getNumTiles() {
+        return tiles.size();
+    }
+
+
+    /**
+        Places whatever the specified map character stands for
+        at the specified tile of the map: a tile, or, if
+        spawnSprites is true, a Sprite.
+    */
+    void placeTile(TileMap map, char ch, int x, int y,
+        boolean spawnSprites)
+    {
+        // check if the char represents tile A, B, C etc.
+        int tile = ch - 'A';
+        if (tile >= 0 && tile < tiles.size()) {
+            map.setTile(x, y, tiles.get(tile));
+        }
+        else if (spawnSprites) {
+            spawnSprite(map, ch, x, y);
+        }
+    }
+
 
-        return newMap;
+    /**
+        Sets the specified tile of the map to the tile image with
+        the specified index (0 for tile A, 1 for B, and so on).
+        Indexes with no tile image are ignored.
+    */
+    void setTile(TileMap map, int x, int y, int tileIndex) {
+        if (tileIndex >= 0 && tileIndex < tiles.size()) {
+            map.setTile(x, y, tiles.get(tileIndex));
+        }
+    }
+
+
+    /**
+        Adds a Sprite for the specified map character at the
+        specified tile of the map. Characters that don't stand
+        for a Sprite are ignored.
+    */
+    void spawnSprite(TileMap map, int type, int x, int y) {
+        if (type >= 0 && type < spawnHosts.length) {
+            addSprite(map, spawnHosts[type], x, y);
+        }
+    }
+
+
+    /**
+        Builds the table of host Sprites by map character.
+    */
+    private void buildSpawnHosts() {
+        // later hosts first, so when two hosts share a character
+        // the first one wins, as in the original if/else chain
+        Sprite[] hosts = {
+            goalSprite, musicSprite, heartSprite, dioSprite,
+            creep_zombie, creep_fly, flySprite, grubSprite
+        };
+        for (int i=0; i<hosts.length; i++) {
+            if (hosts[i] == null) {
+                continue;
+            }
+            int ch = hosts[i].tileID;
+            if (ch >= 0 && ch < spawnHosts.length) {
+                spawnHosts[ch] = hosts[i];
+            }
+        }
     }
 
 
@@ -239,8 +456,8 @@ public class ResourceManager {
         Sprite hostSprite, int tileX, int tileY)
     {
         if (hostSprite != null) {
-            // clone the sprite from the "host"
-            Sprite sprite = (Sprite)hostSprite.clone();
+            // reuse a sprite, or clone one from the "host"
+            Sprite sprite = getSpritePool(hostSprite).obtain();
 
             // center the sprite
             sprite.setX(
@@ -252,6 +469,7 @@ public class ResourceManager {
             sprite.setY(
                 TileMapRenderer.tilesToPixels(tileY + 1) -
                 sprite.getHeight());
+            sprite.savePosition();
 
             // add it to the map
             map.addSprite(sprite);
@@ -259,53 +477,173 @@ public class ResourceManager {
     }
 
 
+    private SpritePool getSpritePool(Sprite hostSprite) {
+        // maps are built on the map loader thread too
+        synchronized (spritePools) {
+            SpritePool pool =
+                spritePools.get(hostSprite.getClass());
+            if (pool == null) {
+                pool = new SpritePool(hostSprite);
+                spritePools.put(hostSprite.getClass(), pool);
+            }
+            return pool;
+        }
+    }
+
+
+    /**
+        Returns a Sprite that has been removed from its map to
+        the pool for its host Sprite, so a later map can reuse it.
+        Sprites that weren't created by this ResourceManager
+        (like the player) are ignored.
+    */
+    public void recycle(Sprite sprite) {
+        SpritePool pool;
+        synchronized (spritePools) {
+            pool = spritePools.get(sprite.getClass());
+        }
+        if (pool != null) {
+            pool.free(sprite);
+        }
+    }
+
+
+    /**
+        Gets a Sprite of the specified class from the pool of
+        Sprites cloned from its host, or null if there is no host
+        Sprite of that class. Used to spawn Sprites parked by a
+        TileMap again.
+    */
+    Sprite obtainSprite(Class<?> type) {
+        SpritePool pool;
+        synchronized (spritePools) {
+            pool = spritePools.get(type);
+        }
+        return (pool != null) ? pool.obtain() : null;
+    }
+
+
+    /**
+        Removes all the Sprites (except the player) from a map
+        that is no longer used, and returns them to their pools.
+    */
+    public void recycleSprites(TileMap map) {
+        for (int i=map.getNumSprites()-1; i>=0; i--) {
+            Sprite sprite = map.getSprite(i);
+            map.removeSprite(sprite);
+            recycle(sprite);
+        }
+    }
+
+
     // -----------------------------------------------------------
     // code for loading sprites and images
     // -----------------------------------------------------------
 
 
+    /**
+        Packs the tile images and every frame of the host Sprites'
+        Animations (including the mirrored and flipped frames)
+        into a TextureAtlas, so they can be drawn from a few large
+        images.
+    */
+    private void buildAtlas() {
+        atlas = new TextureAtlas(gc);
+        for (int i=0; i<tiles.size(); i++) {
+            atlas.add(tiles.get(i));
+        }
+        for (int i=0; i<animations.size(); i++) {
+            Animation anim = animations.get(i);
+            for (int j=0; j<anim.getNumFrames(); j++) {
+                atlas.add(anim.getFrameImage(j));
+            }
+        }
+        atlas.pack();
+        for (int i=0; i<animations.size(); i++) {
+            animations.get(i).useAtlas(atlas);
+        }
+    }
+
+
+    /**
+        Gets the TextureAtlas holding the tiles and the frames of
+        the host Sprites.
+    */
+    public TextureAtlas getAtlas() {
+        return atlas;
+    }
+
+
+    /**
+        Creates a new, empty host Animation, whose frames will be
+        packed into the atlas.
+    */
+    private Animation createAnimation() {
+        Animation anim = new Animation();
+        animations.add(anim);
+        return anim;
+    }
+
+
+    /**
+        Runs a step of building host sprites once everything
+        submitted so far has been started. Steps run in order on
+        the thread constructing this ResourceManager, each
+        waiting for just the images it uses, so Animations are
+        always created in the same order.
+    */
+    private void whenLoaded(Runnable step) {
+        pendingBuilds.add(step);
+    }
+
+
+    /**
+        Runs the steps passed to whenLoaded().
+    */
+    private void finishLoading() {
+        for (int i=0; i<pendingBuilds.size(); i++) {
+            pendingBuilds.get(i).run();
+        }
+        pendingBuilds.clear();
+    }
+
+
     public void loadTileImages() {
         // keep looking for tile A,B,C, etc. this makes it
         // easy to drop new tiles in the images/ directory
-        tiles = new ArrayList();
+        final ArrayList<CompletableFuture<Image>> tileImages =
+            new ArrayList<CompletableFuture<Image>>();
         char ch = 'A';
         while (true) {
             String path = "environment/";
             String name = path + "tile_" + ch + ".png";
-            File file = new File("images/" + name);
-            if (!file.exists()) {
+            if (!loader.exists(name)) {
                 System.out.println("Image file could not be opened: " + name);
                 break;
             }
-            else
-            System.out.println("Image file opened: " + name);
-                        tiles.add(loadImage(name));
+            tileImages.add(loader.loadImage(name));
             ch++;
         }
+        whenLoaded(new Runnable() {
+            public void run() {
+                tiles = new ArrayList<Image>();
+                for (int i=0; i<tileImages.size(); i++) {
+                    tiles.add(tileImages.get(i).join());
+                }
+            }
+        });
     }
 
-    public void loadImages(Image[] images, String path){
-
-        for (int i = 0; i < images.length; i++) {
-            try {
-                images[i] = loadImage(path + i + imgExt);
-            }
-            catch (Exception e){
-                System.out.println(e);
-            }
-        }// end for
+    public List<CompletableFuture<Image>> loadImages(String path, int num){
+        return loader.loadImages(path, num);
     }
 
-    public void flipImages(Image[] flipped, Image[] og){
-        for (int i = 0; i < og.length; i++) {
-            flipped[i] = getFlippedImage(og[i]);
-        }
+    public List<CompletableFuture<Image>> loadImages(String path, int num, int transform){
+        return loader.loadImages(path, num, transform);
     }
 
-    public void mirrorImages(Image[] mirrored, Image[] og){
-        for (int i = 0; i < og.length; i++) {
-            mirrored[i] = getMirrorImage(og[i]);
-        }
+    private static Image[] get(List<CompletableFuture<Image>> images) {
+        return AssetLoader.getImages(images);
     }
 
     private void loadPlayer(){
@@ -313,134 +651,101 @@ public class ResourceManager {
 
         // load idle images for player
         // has 4 images, images/player/idle/1.png
-        int numIdle = 4;
-        String playerIdlePath = "player/idle/";
-        Image[] playerIdle = new Image[numIdle];
-        Image[] playerIdleLeft = new Image[numIdle];
-        loadImages(playerIdle, playerIdlePath);
-        mirrorImages(playerIdleLeft, playerIdle); // this function will mirror the images in the second array, into the first array
-        // load run images for player
-        int numRun = 6;
-        String playerRunPath = "player/run/";
-        Image[] playerRun = new Image[numRun];
-        Image[] playerRunLeft = new Image[numRun];
-        loadImages(playerRun, playerRunPath);
-        mirrorImages(playerRunLeft, playerRun);
+        final List<CompletableFuture<Image>> playerIdle = loadImages("player/idle/", 4);
+        final List<CompletableFuture<Image>> playerIdleLeft = loadImages("player/idle/", 4, ImageCache.MIRROR);
         // load run images for player
-        int numDie = 7;
-        String playerDiePath = "player/die/";
-        Image[] playerDie = new Image[numDie];
-        Image[] playerDieLeft = new Image[numDie];
-        loadImages(playerDie, playerDiePath);
-        mirrorImages(playerDieLeft, playerDie);
+        final List<CompletableFuture<Image>> playerRun = loadImages("player/run/", 6);
+        final List<CompletableFuture<Image>> playerRunLeft = loadImages("player/run/", 6, ImageCache.MIRROR);
+        // load die images for player
+        final List<CompletableFuture<Image>> playerDie = loadImages("player/die/", 7);
+        final List<CompletableFuture<Image>> playerDieLeft = loadImages("player/die/", 7, ImageCache.MIRROR);
         //load jump images
-        int numJump = 4;
-        String playerJumpPath = "player/jump/";
-        Image[] playerJump = new Image[numJump];
-        Image[] playerJumpLeft = new Image[numJump];
-        loadImages(playerJump, playerJumpPath);
-        mirrorImages(playerJumpLeft, playerJump);
+        final List<CompletableFuture<Image>> playerJump = loadImages("player/jump/", 4);
+        final List<CompletableFuture<Image>> playerJumpLeft = loadImages("player/jump/", 4, ImageCache.MIRROR);
         //load FALL images
-        int numFall = 2;
-        String playerFallPath = "player/fall/";
-        Image[] playerFall = new Image[numFall];
-        Image[] playerFallLeft = new Image[numFall];
-        loadImages(playerFall, playerFallPath);
-        mirrorImages(playerFallLeft, playerFall);
-        // now make animations
-        Animation playerIdleAnim = createPlayerAnim(playerIdle);
-        Animation playerIdleLeftAnim = createPlayerAnim(playerIdleLeft);
-
-        Animation playerRunAnim = createPlayerAnim(playerRun);
-        Animation playerRunLeftAnim = createPlayerAnim(playerRunLeft);
-
-        Animation playerDieAnim = createGrubAnim(playerDie);
-        Animation playerDieLeftAnim = createGrubAnim(playerDieLeft);
-
-        Animation playerJumpAnim = createPlayerAnim(playerJump);
-        Animation playerJumpLeftAnim = createPlayerAnim(playerJumpLeft);
-
-        Animation playerFallAnim = createPlayerAnim(playerFall);
-        Animation playerFallLeftAnim = createPlayerAnim(playerFallLeft);
-
-        playerSprite = new Player(
-                playerRunLeftAnim, playerRunAnim,
-                playerDieLeftAnim, playerDieAnim,
-                playerIdleLeftAnim, playerIdleAnim,
-                playerJumpLeftAnim, playerJumpAnim,
-                playerFallLeftAnim, playerFallAnim
-        );
+        final List<CompletableFuture<Image>> playerFall = loadImages("player/fall/", 2);
+        final List<CompletableFuture<Image>> playerFallLeft = loadImages("player/fall/", 2, ImageCache.MIRROR);
+
+        whenLoaded(new Runnable() {
+            public void run() {
+                // now make animations
+                Animation playerIdleAnim = createPlayerAnim(get(playerIdle));
+                Animation playerIdleLeftAnim = createPlayerAnim(get(playerIdleLeft));
+
+                Animation playerRunAnim = createPlayerAnim(get(playerRun));
+                Animation playerRunLeftAnim = createPlayerAnim(get(playerRunLeft));
+
+                Animation playerDieAnim = createGrubAnim(get(playerDie));
+                Animation playerDieLeftAnim = createGrubAnim(get(playerDieLeft));
+
+                Animation playerJumpAnim = createPlayerAnim(get(playerJump));
+                Animation playerJumpLeftAnim = createPlayerAnim(get(playerJumpLeft));
+
+                Animation playerFallAnim = createPlayerAnim(get(playerFall));
+                Animation playerFallLeftAnim = createPlayerAnim(get(playerFallLeft));
+
+                playerSprite = new Player(
+                        playerRunLeftAnim, playerRunAnim,
+                        playerDieLeftAnim, playerDieAnim,
+                        playerIdleLeftAnim, playerIdleAnim,
+                        playerJumpLeftAnim, playerJumpAnim,
+                        playerFallLeftAnim, playerFallAnim
+                );
+            }
+        });
     }
 
     private void loadDio(){
         // note: all the player images are facing right!
 
-        // load idle images for player
-        // has 4 images, images/player/idle/1.png
-        int numIdle = 3; // attack
-        String playerIdlePath = "dio/attack/";
-        Image[] playerIdle = new Image[numIdle];
-        Image[] playerIdleLeft = new Image[numIdle];
-        loadImages(playerIdle, playerIdlePath);
-        mirrorImages(playerIdleLeft, playerIdle); // this function will mirror the images in the second array, into the first array
-        // load run images for player
-        int numRun = 8;
-        String playerRunPath = "dio/run/";
-        Image[] playerRun = new Image[numRun];
-        Image[] playerRunLeft = new Image[numRun];
-        loadImages(playerRun, playerRunPath);
-        mirrorImages(playerRunLeft, playerRun);
-        // load run images for player
-        int numDie = 6;
-        String playerDiePath = "dio/die/";
-        Image[] playerDie = new Image[numDie];
-        Image[] playerDieLeft = new Image[numDie];
-        loadImages(playerDie, playerDiePath);
-        mirrorImages(playerDieLeft, playerDie);
-        //load jump images
-
-        // now make animations
-        Animation playerIdleAnim = createPlayerAnim(playerIdle); // attack
-        Animation playerIdleLeftAnim = createPlayerAnim(playerIdleLeft);
-
-        Animation playerRunAnim = createPlayerAnim(playerRun);
-        Animation playerRunLeftAnim = createPlayerAnim(playerRunLeft);
-
-        Animation playerDieAnim = createGrubAnim(playerDie);
-        Animation playerDieLeftAnim = createGrubAnim(playerDieLeft);
-
-
-        dioSprite = new Dio(
-                playerRunLeftAnim, playerRunAnim,
-                playerDieLeftAnim, playerDieAnim,
-                playerIdleLeftAnim, playerIdleAnim
-        );
+        // load attack images
+        final List<CompletableFuture<Image>> playerIdle = loadImages("dio/attack/", 3);
+        final List<CompletableFuture<Image>> playerIdleLeft = loadImages("dio/attack/", 3, ImageCache.MIRROR);
+        // load run images
+        final List<CompletableFuture<Image>> playerRun = loadImages("dio/run/", 8);
+        final List<CompletableFuture<Image>> playerRunLeft = loadImages("dio/run/", 8, ImageCache.MIRROR);
+        // load die images
+        final List<CompletableFuture<Image>> playerDie = loadImages("dio/die/", 6);
+        final List<CompletableFuture<Image>> playerDieLeft = loadImages("dio/die/", 6, ImageCache.MIRROR);
+
+        whenLoaded(new Runnable() {
+            public void run() {
+                // now make animations
+                Animation playerIdleAnim = createPlayerAnim(get(playerIdle)); // attack
+                Animation playerIdleLeftAnim = createPlayerAnim(get(playerIdleLeft));
+
+                Animation playerRunAnim = createPlayerAnim(get(playerRun));
+                Animation playerRunLeftAnim = createPlayerAnim(get(playerRunLeft));
+
+                Animation playerDieAnim = createGrubAnim(get(playerDie));
+                Animation playerDieLeftAnim = createGrubAnim(get(playerDieLeft));
+
+                dioSprite = new Dio(
+                        playerRunLeftAnim, playerRunAnim,
+                        playerDieLeftAnim, playerDieAnim,
+                        playerIdleLeftAnim, playerIdleAnim
+                );
+            }
+        });
     }
 
     private void loadFly(){
         // note: all the fly images are facing left
-        int num = 3;
-        String path = "fly/";
-        Image[] flyLeft = new Image[num];
-        Image[] fly = new Image[num];
-        Image[] flyFlippedLeft = new Image[num]; // deadleft
-        Image[] flyFlipped = new Image[num]; // dead right
-
-        loadImages(flyLeft, path); // load initial fly, which face left
-        mirrorImages(fly, flyLeft); // get right facing fly
-        flipImages(flyFlippedLeft, flyLeft); // get dead fly
-        flipImages(flyFlipped, fly); // get dead fly
-
-        Animation flyAnim = new Animation();
-        flyAnim = createFlyAnim(fly);
-        Animation flyLeftAnim = new Animation();
-        flyLeftAnim = createFlyAnim(flyLeft);
-        Animation dieAnim = new Animation();
-        dieAnim = createFlyAnim(flyFlipped);
-        Animation dieLeftAnim = new Animation();
-        dieLeftAnim = createFlyAnim(flyFlippedLeft);
-
-        flySprite = new Fly(flyLeftAnim, flyAnim, dieLeftAnim, dieAnim);
+        final List<CompletableFuture<Image>> flyLeft = loadImages("fly/", 3); // load initial fly, which face left
+        final List<CompletableFuture<Image>> fly = loadImages("fly/", 3, ImageCache.MIRROR); // get right facing fly
+        final List<CompletableFuture<Image>> flyFlippedLeft = loadImages("fly/", 3, ImageCache.FLIP); // get dead fly
+        final List<CompletableFuture<Image>> flyFlipped = loadImages("fly/", 3, ImageCache.MIRROR | ImageCache.FLIP); // get dead fly
+
+        whenLoaded(new Runnable() {
+            public void run() {
+                Animation flyAnim = createFlyAnim(get(fly));
+                Animation flyLeftAnim = createFlyAnim(get(flyLeft));
+                Animation dieAnim = createFlyAnim(get(flyFlipped));
+                Animation dieLeftAnim = createFlyAnim(get(flyFlippedLeft));
+
+                flySprite = new Fly(flyLeftAnim, flyAnim, dieLeftAnim, dieAnim);
+            }
+        });
     }
 
     private void loadCreeps(){
@@ -448,78 +753,56 @@ public class ResourceManager {
         String path = "creeps/";
 
         String zombiePath = path + "zombie/";
-        // load run images for player
-        int numRun = 6;
-        String playerRunPath = zombiePath + "run/";
-        Image[] playerRun = new Image[numRun];
-        Image[] playerRunLeft = new Image[numRun];
-        loadImages(playerRun, playerRunPath);
-        mirrorImages(playerRunLeft, playerRun);
-        // load run images for player
-        int numDie = 3;
-        String playerDiePath = zombiePath + "hit/";
-        Image[] playerDie = new Image[numDie];
-        Image[] playerDieLeft = new Image[numDie];
-        loadImages(playerDie, playerDiePath);
-        mirrorImages(playerDieLeft, playerDie);
-
-        Animation playerRunAnim = createPlayerAnim(playerRun);
-        Animation playerRunLeftAnim = createPlayerAnim(playerRunLeft);
+        // load run images for zombie
+        final List<CompletableFuture<Image>> zombieRun = loadImages(zombiePath + "run/", 6);
+        final List<CompletableFuture<Image>> zombieRunLeft = loadImages(zombiePath + "run/", 6, ImageCache.MIRROR);
+        // load die images for zombie
+        final List<CompletableFuture<Image>> zombieDie = loadImages(zombiePath + "hit/", 3);
+        final List<CompletableFuture<Image>> zombieDieLeft = loadImages(zombiePath + "hit/", 3, ImageCache.MIRROR);
 
-        Animation playerDieAnim = createGrubAnim(playerDie);
-        Animation playerDieLeftAnim = createGrubAnim(playerDieLeft);
-
-        this.creep_zombie = new Creep_Zombie(playerRunLeftAnim, playerRunAnim, playerDieLeftAnim, playerDieAnim);
+        String batPath = path + "bat/";
+        final List<CompletableFuture<Image>> flyLeft = loadImages(batPath, 5); // load initial fly, which face left
+        final List<CompletableFuture<Image>> fly = loadImages(batPath, 5, ImageCache.MIRROR); // get right facing fly
+        final List<CompletableFuture<Image>> flyFlippedLeft = loadImages(batPath, 5, ImageCache.FLIP); // get dead fly
+        final List<CompletableFuture<Image>> flyFlipped = loadImages(batPath, 5, ImageCache.MIRROR | ImageCache.FLIP); // get dead fly
 
+        whenLoaded(new Runnable() {
+            public void run() {
+                Animation zombieRunAnim = createPlayerAnim(get(zombieRun));
+                Animation zombieRunLeftAnim = createPlayerAnim(get(zombieRunLeft));
 
-        int num = 5;
-        String batPath = path + "bat/";
-        Image[] flyLeft = new Image[num];
-        Image[] fly = new Image[num];
-        Image[] flyFlippedLeft = new Image[num]; // deadleft
-        Image[] flyFlipped = new Image[num]; // dead right
+                Animation zombieDieAnim = createGrubAnim(get(zombieDie));
+                Animation zombieDieLeftAnim = createGrubAnim(get(zombieDieLeft));
 
-        loadImages(flyLeft, batPath); // load initial fly, which face left
-        mirrorImages(fly, flyLeft); // get right facing fly
-        flipImages(flyFlippedLeft, flyLeft); // get dead fly
-        flipImages(flyFlipped, fly); // get dead fly
+                creep_zombie = new Creep_Zombie(zombieRunLeftAnim, zombieRunAnim, zombieDieLeftAnim, zombieDieAnim);
 
-        Animation flyAnim = new Animation();
-        flyAnim = createFlyAnim(fly);
-        Animation flyLeftAnim = new Animation();
-        flyLeftAnim = createFlyAnim(flyLeft);
-        Animation dieAnim = new Animation();
-        dieAnim = createFlyAnim(flyFlipped);
-        Animation dieLeftAnim = new Animation();
-        dieLeftAnim = createFlyAnim(flyFlippedLeft);
+                Animation flyAnim = createFlyAnim(get(fly));
+                Animation flyLeftAnim = createFlyAnim(get(flyLeft));
+                Animation dieAnim = createFlyAnim(get(flyFlipped));
+                Animation dieLeftAnim = createFlyAnim(get(flyFlippedLeft));
 
-        this.creep_fly = new Creep_Fly(flyLeftAnim, flyAnim, dieLeftAnim, dieAnim);
+                creep_fly = new Creep_Fly(flyLeftAnim, flyAnim, dieLeftAnim, dieAnim);
+            }
+        });
     }
 
     private void loadGrub(){
         // note: all the fly images are facing left
-        int num = 2;
-        String path = "grub/";
-        Image[] flyLeft = new Image[num];
-        Image[] fly = new Image[num];
-        Image[] flyFlippedLeft = new Image[num]; // deadleft
-        Image[] flyFlipped = new Image[num]; // dead right
-
-        loadImages(flyLeft, path); // load initial fly, which face left
-        mirrorImages(fly, flyLeft); // get right facing fly
-        flipImages(flyFlippedLeft, flyLeft); // get dead fly
-        flipImages(flyFlipped, fly); // get dead fly
-
-        Animation flyAnim = new Animation();
-        flyAnim = createGrubAnim(fly);
-        Animation flyLeftAnim = new Animation();
-        flyLeftAnim = createGrubAnim(flyLeft);
-        Animation dieAnim = new Animation();
-        dieAnim = createGrubAnim(flyFlipped);
-        Animation dieLeftAnim = new Animation();
-        dieLeftAnim = createGrubAnim(flyFlippedLeft);
-
-        grubSprite = new Grub(flyLeftAnim, flyAnim, dieLeftAnim, dieAnim);
+        final List<CompletableFuture<Image>> flyLeft = loadImages("grub/", 2); // load initial fly, which face left
+        final List<CompletableFuture<Image>> fly = loadImages("grub/", 2, ImageCache.MIRROR); // get right facing fly
+        final List<CompletableFuture<Image>> flyFlippedLeft = loadImages("grub/", 2, ImageCache.FLIP); // get dead fly
+        final List<CompletableFuture<Image>> flyFlipped = loadImages("grub/", 2, ImageCache.MIRROR | ImageCache.FLIP); // get dead fly
+
+        whenLoaded(new Runnable() {
+            public void run() {
+                Animation flyAnim = createGrubAnim(get(fly));
+                Animation flyLeftAnim = createGrubAnim(get(flyLeft));
+                Animation dieAnim = createGrubAnim(get(flyFlipped));
+                Animation dieLeftAnim = createGrubAnim(get(flyFlippedLeft));
+
+                grubSprite = new Grub(flyLeftAnim, flyAnim, dieLeftAnim, dieAnim);
+            }
+        });
     }
 
     public void loadCreatureSprites() {
@@ -528,13 +811,13 @@ public class ResourceManager {
         loadGrub();
         loadDio();
         loadCreeps();
-        System.out.println("loadCreatureSprites successfully executed.");
+        System.out.println("loadCreatureSprites successfully started.");
 
     }
 
     private Animation createPlayerAnim(Image[] images)
     {
-        Animation anim = new Animation();
+        Animation anim = createAnimation();
         for (int i = 0; i < images.length; i++) {
             anim.addFrame(images[i], 100);
         }
@@ -544,7 +827,7 @@ public class ResourceManager {
 
     private Animation createFlyAnim(Image[] images)
     {
-        Animation anim = new Animation();
+        Animation anim = createAnimation();
         for (int i = 0; i < images.length; i++) {
             anim.addFrame(images[i], 50);
         }
@@ -554,40 +837,53 @@ public class ResourceManager {
 
     private Animation createGrubAnim(Image[] images)
     {
-        Animation anim = new Animation();
+        Animation anim = createAnimation();
         for (int i = 0; i < images.length; i++) {
             anim.addFrame(images[i], 250);
         }
         return anim;
     }
 
+
+    private Animation createDropAnim(Image[] images)
+    {
+        Animation anim = createAnimation();
+        for (int i = 0; i < images.length; i++) {
+            anim.addFrame(images[i], 150);
+        }
+        return anim;
+    }
+
     public void loadGoalSprite(){
-        String path = "drops/goal/";
-        int num = 4;
-        Animation anim = new Animation();
-        for (int i = 0; i < num; i++) anim.addFrame(loadImage(path + i + imgExt), 150);
-        goalSprite = new PowerUp.Goal(anim);
+        final List<CompletableFuture<Image>> images = loadImages("drops/goal/", 4);
+        whenLoaded(new Runnable() {
+            public void run() {
+                goalSprite = new PowerUp.Goal(createDropAnim(get(images)));
+            }
+        });
     }
     public void loadHeartSprite(){
-        String path = "drops/heart/";
-        int num = 3;
-        Animation anim = new Animation();
-        for (int i = 0; i < num; i++) anim.addFrame(loadImage(path + i + imgExt), 150);
-        heartSprite = new PowerUp.Heart(anim);
+        final List<CompletableFuture<Image>> images = loadImages("drops/heart/", 3);
+        whenLoaded(new Runnable() {
+            public void run() {
+                heartSprite = new PowerUp.Heart(createDropAnim(get(images)));
+            }
+        });
     }
     public void loadMusicSprite(){
-        String path = "drops/music/";
-        int num = 3;
-        Animation anim = new Animation();
-        for (int i = 0; i < num; i++) anim.addFrame(loadImage(path + i + imgExt), 150);
-        musicSprite = new PowerUp.Music(anim);
+        final List<CompletableFuture<Image>> images = loadImages("drops/music/", 3);
+        whenLoaded(new Runnable() {
+            public void run() {
+                musicSprite = new PowerUp.Music(createDropAnim(get(images)));
+            }
+        });
     }
 
     private void loadPowerUpSprites() {
         loadGoalSprite();
         loadMusicSprite();
         loadHeartSprite();
-        System.out.println("loadPowerUpSprites successfully executed.");
+        System.out.println("loadPowerUpSprites successfully started.");
     }
 
     public void showGoal() {
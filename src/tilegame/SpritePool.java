@@ -0,0 +1,83 @@
+package tilegame;
+
+import graphics.Sprite;
+
+/**
+    A SpritePool keeps Sprites cloned from one "host" Sprite that
+    are no longer in use, so they can be handed out again instead
+    of cloning the host (and all its Animations) every time a map
+    is loaded. A SpritePool may be shared by threads building
+    maps at the same time.
+*/
+public class SpritePool {
+
+    private Sprite host;
+    private Sprite[] free;
+    private int numFree;
+    private int numCreated;
+
+    /**
+        Creates a new, empty SpritePool for the specified host
+        Sprite.
+    */
+    public SpritePool(Sprite host) {
+        this.host = host;
+        free = new Sprite[16];
+    }
+
+
+    /**
+        Gets the host Sprite new Sprites are cloned from.
+    */
+    public Sprite getHost() {
+        return host;
+    }
+
+
+    /**
+        Gets a Sprite from this pool. A Sprite that was returned
+        with free() is reset and reused if there is one, otherwise
+        the host Sprite is cloned.
+    */
+    public synchronized Sprite obtain() {
+        if (numFree > 0) {
+            Sprite sprite = free[--numFree];
+            free[numFree] = null;
+            sprite.reset();
+            return sprite;
+        }
+        numCreated++;
+        return (Sprite)host.clone();
+    }
+
+
+    /**
+        Returns a Sprite to this pool. The Sprite should no longer
+        be in any map.
+    */
+    public synchronized void free(Sprite sprite) {
+        if (numFree == free.length) {
+            Sprite[] newFree = new Sprite[numFree * 2];
+            System.arraycopy(free, 0, newFree, 0, numFree);
+            free = newFree;
+        }
+        free[numFree++] = sprite;
+    }
+
+
+    /**
+        Gets the number of Sprites waiting in this pool.
+    */
+    public synchronized int getNumFree() {
+        return numFree;
+    }
+
+
+    /**
+        Gets the number of Sprites this pool has cloned from the
+        host Sprite.
+    */
+    public synchronized int getNumCreated() {
+        return numCreated;
+    }
+}
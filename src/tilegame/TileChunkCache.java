@@ -0,0 +1,309 @@
+package tilegame;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import graphics.TextureAtlas;
+
+/**
+    The TileChunkCache class draws the tiles of a RenderSnapshot
+    from cached images, each holding one block of tiles (see
+    TileMap.BLOCK_SIZE) already drawn. Drawing the visible tiles
+    then takes one drawImage() per block on the screen instead
+    of one per tile. A block is only redrawn into its image when
+    its version in the snapshot changes.
+    <p>
+    When drawing to the screen, the cached images are
+    VolatileImages so they can live in video memory; their
+    contents are redrawn if the system loses them. Otherwise
+    (or if VolatileImages can't be created) they are
+    BufferedImages. Only the most recently drawn blocks are kept,
+    up to a limit.
+*/
+public class TileChunkCache {
+
+    /**
+        The default number of cached block images.
+    */
+    public static final int DEFAULT_MAX_BLOCKS = 32;
+
+    private static final int BLOCK_PIXELS =
+        TileMapRenderer.tilesToPixels(TileMap.BLOCK_SIZE);
+
+    private int mapId;
+    private RenderSnapshot snapshot;
+    private TextureAtlas atlas;
+    private GraphicsConfiguration gc;
+    private int maxBlocks;
+    private LinkedHashMap<Long, Block> blocks;
+
+    /**
+        Creates a new TileChunkCache that keeps up to
+        DEFAULT_MAX_BLOCKS block images.
+    */
+    public TileChunkCache() {
+        this(DEFAULT_MAX_BLOCKS);
+    }
+
+
+    /**
+        Creates a new TileChunkCache that keeps up to the
+        specified number of block images.
+    */
+    public TileChunkCache(int maxBlocks) {
+        this.maxBlocks = Math.max(maxBlocks, 1);
+        // access-ordered, so the eldest entry is the least
+        // recently drawn block
+        blocks = new LinkedHashMap<Long, Block>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(
+                Map.Entry<Long, Block> eldest)
+            {
+                if (size() > TileChunkCache.this.maxBlocks) {
+                    eldest.getValue().flush();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    /**
+        Sets the TextureAtlas to draw tiles from. Tiles that
+        aren't in the atlas are drawn from their own images.
+    */
+    public void setAtlas(TextureAtlas atlas) {
+        this.atlas = atlas;
+        clear();
+    }
+
+
+    /**
+        Throws away all the cached block images.
+    */
+    public void clear() {
+        Iterator<Block> i = blocks.values().iterator();
+        while (i.hasNext()) {
+            i.next().flush();
+        }
+        blocks.clear();
+    }
+
+
+    /**
+        Draws the tiles of the specified snapshot that are on a
+        screen of the specified size, with the map scrolled by
+        offsetX and offsetY.
+    */
+    public void draw(Graphics2D g, RenderSnapshot s, int offsetX,
+        int offsetY, int screenWidth, int screenHeight)
+    {
+        // cached images are only good for one map and one kind
+        // of destination
+        GraphicsConfiguration newGc = g.getDeviceConfiguration();
+        if (s.mapId != mapId || newGc != gc) {
+            clear();
+            this.mapId = s.mapId;
+            this.gc = newGc;
+        }
+        snapshot = s;
+
+        int mapHeight = TileMapRenderer.tilesToPixels(s.mapHeight);
+        int fromBlockX = Math.max(
+            Math.floorDiv(-offsetX, BLOCK_PIXELS), 0);
+        int toBlockX = Math.floorDiv(screenWidth - 1 - offsetX,
+            BLOCK_PIXELS);
+        int fromBlockY = Math.max(
+            Math.floorDiv(-offsetY, BLOCK_PIXELS), 0);
+        int toBlockY = Math.min(
+            Math.floorDiv(screenHeight - 1 - offsetY, BLOCK_PIXELS),
+            (mapHeight - 1) / BLOCK_PIXELS);
+
+        for (int by=fromBlockY; by<=toBlockY; by++) {
+            for (int bx=fromBlockX; bx<=toBlockX; bx++) {
+                drawBlock(g, bx, by,
+                    bx * BLOCK_PIXELS + offsetX,
+                    by * BLOCK_PIXELS + offsetY);
+            }
+        }
+        snapshot = null;
+    }
+
+
+    private void drawBlock(Graphics2D g, int blockX, int blockY,
+        int x, int y)
+    {
+        int version = snapshot.getBlockVersion(blockX, blockY);
+        Long key = Long.valueOf(((long)blockX << 32) |
+            (blockY & 0xffffffffL));
+        Block block = blocks.get(key);
+        if (block == null) {
+            block = new Block();
+            block.version = version - 1;
+            block.empty = true;
+            blocks.put(key, block);
+        }
+
+        // empty blocks aren't drawn and don't need an image
+        if (block.version != version) {
+            boolean empty = isEmpty(blockX, blockY);
+            if (empty) {
+                block.flush();
+                block.version = version;
+            }
+            block.empty = empty;
+        }
+        if (block.empty) {
+            return;
+        }
+        if (block.image == null) {
+            block.image = createImage();
+            block.version = version - 1;
+        }
+
+        if (block.image instanceof VolatileImage) {
+            // the contents of a VolatileImage can be lost at any
+            // time, so check before and after drawing it
+            VolatileImage image = (VolatileImage)block.image;
+            do {
+                int valid = image.validate(gc);
+                if (valid == VolatileImage.IMAGE_INCOMPATIBLE) {
+                    // the display changed; start over with a new
+                    // image
+                    block.flush();
+                    block.version = version - 1;
+                    drawBlock(g, blockX, blockY, x, y);
+                    return;
+                }
+                if (valid == VolatileImage.IMAGE_RESTORED ||
+                    block.version != version)
+                {
+                    render(image, blockX, blockY);
+                    block.version = version;
+                }
+                g.drawImage(image, x, y, null);
+            }
+            while (image.contentsLost());
+        }
+        else {
+            if (block.version != version) {
+                render(block.image, blockX, blockY);
+                block.version = version;
+            }
+            g.drawImage(block.image, x, y, null);
+        }
+    }
+
+
+    /**
+        Draws the tiles of a block into a block image, replacing
+        what was there.
+    */
+    private void render(Image image, int blockX, int blockY) {
+        Graphics2D g = (Graphics2D)image.getGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, BLOCK_PIXELS, BLOCK_PIXELS);
+        g.setComposite(AlphaComposite.SrcOver);
+
+        int fromTileX = blockX << TileMap.BLOCK_BITS;
+        int fromTileY = blockY << TileMap.BLOCK_BITS;
+        for (int ty=0; ty<TileMap.BLOCK_SIZE; ty++) {
+            for (int tx=0; tx<TileMap.BLOCK_SIZE; tx++) {
+                Image tile = snapshot.getTile(fromTileX + tx,
+                    fromTileY + ty);
+                if (tile == null) {
+                    continue;
+                }
+                TextureAtlas.Region region = (atlas == null ? null :
+                    atlas.getRegion(tile));
+                if (region != null) {
+                    region.draw(g, TileMapRenderer.tilesToPixels(tx),
+                        TileMapRenderer.tilesToPixels(ty));
+                }
+                else {
+                    g.drawImage(tile,
+                        TileMapRenderer.tilesToPixels(tx),
+                        TileMapRenderer.tilesToPixels(ty),
+                        null);
+                }
+            }
+        }
+        g.dispose();
+    }
+
+
+    private boolean isEmpty(int blockX, int blockY) {
+        int fromTileX = blockX << TileMap.BLOCK_BITS;
+        int fromTileY = blockY << TileMap.BLOCK_BITS;
+        for (int ty=0; ty<TileMap.BLOCK_SIZE; ty++) {
+            for (int tx=0; tx<TileMap.BLOCK_SIZE; tx++) {
+                if (snapshot.getTile(fromTileX + tx,
+                    fromTileY + ty) != null)
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+
+    /**
+        Creates an image for a block: a VolatileImage if drawing
+        to the screen, otherwise a BufferedImage.
+    */
+    private Image createImage() {
+        if (gc != null && gc.getDevice().getType() ==
+            GraphicsDevice.TYPE_RASTER_SCREEN)
+        {
+            Image image = createVolatileImage();
+            if (image != null) {
+                return image;
+            }
+        }
+        if (gc != null) {
+            return gc.createCompatibleImage(BLOCK_PIXELS,
+                BLOCK_PIXELS, Transparency.TRANSLUCENT);
+        }
+        return new BufferedImage(BLOCK_PIXELS, BLOCK_PIXELS,
+            BufferedImage.TYPE_INT_ARGB);
+    }
+
+
+    private VolatileImage createVolatileImage() {
+        try {
+            return gc.createCompatibleVolatileImage(BLOCK_PIXELS,
+                BLOCK_PIXELS, Transparency.TRANSLUCENT);
+        }
+        catch (Exception ex) {
+            // no accelerated images here; fall back to
+            // BufferedImages
+            return null;
+        }
+    }
+
+
+    /**
+        A cached block image, and the version of the block's
+        tiles it was drawn with.
+    */
+    private static class Block {
+
+        Image image;
+        int version;
+        boolean empty;
+
+        void flush() {
+            if (image != null) {
+                image.flush();
+                image = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package tilegame;
+
+/**
+    A TileCollision finds the first tile a moving box runs into
+    and holds the result: when the box hits it, which tile it is,
+    and which side of the tile was hit. One TileCollision can be
+    reused for any number of sweeps.
+    <p>
+    The sweep steps through every tile boundary the box crosses
+    (one per 64 pixels moved), so fast boxes and long time steps
+    can't tunnel through tiles, and the tile found is always the
+    nearest one along the path.
+*/
+public class TileCollision {
+
+    /**
+        Bits returned by move() for the kinds of tiles hit.
+    */
+    public static final int HIT_HORIZONTAL = 1;
+    public static final int HIT_VERTICAL = 2;
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    /**
+        Whether the last sweep hit a tile.
+    */
+    public boolean hit;
+
+    /**
+        The fraction of the move, from 0 to 1, made before the
+        box hit the tile. 1 if nothing was hit.
+    */
+    public float time;
+
+    /**
+        The tile that was hit.
+    */
+    public int tileX;
+    public int tileY;
+
+    /**
+        The normal of the side of the tile that was hit. Exactly
+        one of these is -1 or 1 when a tile was hit; for example,
+        a box moving right that hits a wall gets a normalX of -1.
+    */
+    public int normalX;
+    public int normalY;
+
+    /**
+        Where the box ended up after the last move().
+    */
+    public float endX;
+    public float endY;
+
+
+    /**
+        Moves a box with the specified position and size, stopping
+        it at the first tile it runs into and then sliding it
+        along that tile for the rest of the move. The new
+        position is left in endX and endY.
+        <p>
+        Returns a combination of HIT_HORIZONTAL and HIT_VERTICAL
+        for the kinds of tiles that were hit, or 0.
+    */
+    public int move(TileMap map, float x, float y,
+        int width, int height, float moveX, float moveY)
+    {
+        int hits = 0;
+
+        // the first hit stops movement along one axis, so there
+        // are never more than two passes
+        for (int pass=0; pass<2; pass++) {
+            if (!sweep(map, x, y, width, height, moveX, moveY)) {
+                x += moveX;
+                y += moveY;
+                break;
+            }
+
+            // line up with the tile boundary
+            float t = time;
+            if (normalX < 0) {
+                x = TileMapRenderer.tilesToPixels(tileX) - width;
+            }
+            else if (normalX > 0) {
+                x = TileMapRenderer.tilesToPixels(tileX + 1);
+            }
+            else {
+                x += moveX * t;
+            }
+            if (normalY < 0) {
+                y = TileMapRenderer.tilesToPixels(tileY) - height;
+            }
+            else if (normalY > 0) {
+                y = TileMapRenderer.tilesToPixels(tileY + 1);
+            }
+            else {
+                y += moveY * t;
+            }
+
+            // slide along the tile for the rest of the move
+            if (normalX != 0) {
+                hits |= HIT_HORIZONTAL;
+                moveX = 0;
+                moveY *= (1 - t);
+            }
+            else {
+                hits |= HIT_VERTICAL;
+                moveX *= (1 - t);
+                moveY = 0;
+            }
+            if (moveX == 0 && moveY == 0) {
+                break;
+            }
+        }
+
+        endX = x;
+        endY = y;
+        return hits;
+    }
+
+
+    /**
+        Sweeps a box with the specified position and size (in
+        pixels) along a move (in pixels), and finds the first
+        tile it runs into. Tiles to the left or right of the map
+        count as solid, like walls. A box that already overlaps a
+        tile is not stopped by that tile.
+        <p>
+        Returns true if a tile was hit.
+    */
+    public boolean sweep(TileMap map, float x, float y,
+        int width, int height, float moveX, float moveY)
+    {
+        hit = false;
+        time = 1;
+        normalX = 0;
+        normalY = 0;
+
+        // on a tie, prefer the vertical hit so boxes running
+        // along the ground land instead of stopping
+        if (moveY != 0) {
+            sweepY(map, x, y, width, height, moveX, moveY);
+        }
+        if (moveX != 0) {
+            sweepX(map, x, y, width, height, moveX, moveY);
+        }
+        return hit;
+    }
+
+
+    private void sweepX(TileMap map, float x, float y,
+        int width, int height, float moveX, float moveY)
+    {
+        if (moveX > 0) {
+            // first column to the right of the box
+            float right = x + width;
+            int col = ceilToTile(right);
+            while (TileMapRenderer.tilesToPixels(col) <
+                right + moveX)
+            {
+                float t = (TileMapRenderer.tilesToPixels(col) -
+                    right) / moveX;
+                if (t >= time && hit) {
+                    return;
+                }
+                int row = findSolidRow(map, col, y + moveY * t,
+                    height);
+                if (row != NONE) {
+                    setHitX(col, row, -1, t);
+                    return;
+                }
+                col++;
+            }
+        }
+        else {
+            // first column to the left of the box
+            int col = floorToTile(x) - 1;
+            while (TileMapRenderer.tilesToPixels(col + 1) >
+                x + moveX)
+            {
+                float t = (x - TileMapRenderer.tilesToPixels(col + 1)) /
+                    -moveX;
+                if (t >= time && hit) {
+                    return;
+                }
+                int row = findSolidRow(map, col, y + moveY * t,
+                    height);
+                if (row != NONE) {
+                    setHitX(col, row, 1, t);
+                    return;
+                }
+                col--;
+            }
+        }
+    }
+
+
+    private void sweepY(TileMap map, float x, float y,
+        int width, int height, float moveX, float moveY)
+    {
+        if (moveY > 0) {
+            // first row below the box
+            float bottom = y + height;
+            int row = ceilToTile(bottom);
+            while (TileMapRenderer.tilesToPixels(row) <
+                bottom + moveY)
+            {
+                float t = (TileMapRenderer.tilesToPixels(row) -
+                    bottom) / moveY;
+                int col = findSolidColumn(map, row, x + moveX * t,
+                    width);
+                if (col != NONE) {
+                    setHitY(col, row, -1, t);
+                    return;
+                }
+                row++;
+            }
+        }
+        else {
+            // first row above the box
+            int row = floorToTile(y) - 1;
+            while (TileMapRenderer.tilesToPixels(row + 1) >
+                y + moveY)
+            {
+                float t = (y - TileMapRenderer.tilesToPixels(row + 1)) /
+                    -moveY;
+                int col = findSolidColumn(map, row, x + moveX * t,
+                    width);
+                if (col != NONE) {
+                    setHitY(col, row, 1, t);
+                    return;
+                }
+                row--;
+            }
+        }
+    }
+
+
+    private void setHitX(int col, int row, int normal, float t) {
+        hit = true;
+        time = t;
+        tileX = col;
+        tileY = row;
+        normalX = normal;
+        normalY = 0;
+    }
+
+
+    private void setHitY(int col, int row, int normal, float t) {
+        hit = true;
+        time = t;
+        tileX = col;
+        tileY = row;
+        normalX = 0;
+        normalY = normal;
+    }
+
+
+    /**
+        Finds the first solid tile in a column, out of the rows
+        spanned by a box with the specified top and height.
+        Returns NONE if there's no solid tile.
+    */
+    private static int findSolidRow(TileMap map, int col,
+        float top, int height)
+    {
+        int fromRow = floorToTile(top);
+        int toRow = ceilToTile(top + height) - 1;
+        for (int row=fromRow; row<=toRow; row++) {
+            if (isSolid(map, col, row)) {
+                return row;
+            }
+        }
+        return NONE;
+    }
+
+
+    /**
+        Finds the first solid tile in a row, out of the columns
+        spanned by a box with the specified left edge and width.
+        Returns NONE if there's no solid tile.
+    */
+    private static int findSolidColumn(TileMap map, int row,
+        float left, int width)
+    {
+        int fromCol = floorToTile(left);
+        int toCol = ceilToTile(left + width) - 1;
+        for (int col=fromCol; col<=toCol; col++) {
+            if (isSolid(map, col, row)) {
+                return col;
+            }
+        }
+        return NONE;
+    }
+
+
+    private static boolean isSolid(TileMap map, int x, int y) {
+        return (x < 0 || x >= map.getWidth() ||
+            map.getTile(x, y) != null);
+    }
+
+
+    private static int floorToTile(float pixels) {
+        return (int)Math.floor(pixels /
+            TileMapRenderer.tilesToPixels(1));
+    }
+
+
+    private static int ceilToTile(float pixels) {
+        return (int)Math.ceil(pixels /
+            TileMapRenderer.tilesToPixels(1));
+    }
+}
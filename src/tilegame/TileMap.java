@@ -1,10 +1,14 @@
 package tilegame;
 
 import java.awt.Image;
-import java.util.LinkedList;
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.Arrays;
 
 import graphics.Sprite;
+import graphics.SpriteGrid;
+import graphics.SpriteList;
+import tilegame.sprites.Creature;
+import tilegame.sprites.CreatureStore;
 import tilegame.sprites.Dio;
 import tilegame.sprites.Player;
 
@@ -13,11 +17,65 @@ import tilegame.sprites.Player;
     map, including Sprites. Each tile is a reference to an
     Image. Of course, Images are used multiple times in the tile
     map.
+    <p>
+    Tiles are kept in square chunks of CHUNK_SIZE by CHUNK_SIZE
+    tiles. A map created with a ChunkSource starts out empty and
+    loads chunks from the source as updateStreaming() is called
+    with the camera position, evicting chunks that are far away,
+    so very wide maps use a bounded amount of memory.
+    <p>
+    If the map has a ResourceManager, the Sprites in an evicted
+    chunk are parked too: their position, velocity, state and
+    health are saved with the chunk, the Sprites go back to their
+    pools, and they are spawned again from the saved state when
+    the chunk is loaded again.
 */
 public class TileMap {
 
-    private Image[][] tiles;
-    private LinkedList sprites;
+    /**
+        Chunks are 2^CHUNK_BITS tiles across and down.
+    */
+    public static final int CHUNK_BITS = 5;
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+        Tiles are also grouped into blocks of 2^BLOCK_BITS by
+        2^BLOCK_BITS tiles, each with a version number that
+        changes whenever a tile in the block changes, so
+        renderers that cache drawn tiles know when to redraw.
+    */
+    public static final int BLOCK_BITS = 3;
+    public static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+
+    /**
+        Default distance, in chunks, from the camera chunk at
+        which chunks are loaded.
+    */
+    public static final int DEFAULT_STREAM_RADIUS = 2;
+
+    private int width;
+    private int height;
+    private int chunksAcross;
+    private int chunksDown;
+    private Image[][] chunks;
+    private boolean[] loaded;
+    private boolean[] spawned;
+    private ChunkSource chunkSource;
+    private ResourceManager resourceManager;
+    // the Sprites parked in each evicted chunk, or null
+    private SavedSprites[] parked;
+    private int blocksAcross;
+    private int[] blockVersions;
+    private int streamRadius = DEFAULT_STREAM_RADIUS;
+    private int centerChunkX = Integer.MIN_VALUE;
+    private int centerChunkY = Integer.MIN_VALUE;
+
+    private SpriteList sprites;
+    // sprites being returned to their pools by flushRemovals()
+    private Sprite[] recycled = new Sprite[16];
+    private SpriteGrid spriteGrid;
+    private CreatureStore creatures;
     private Player player;
 //    private Dio dio;
 
@@ -26,8 +84,52 @@ public class TileMap {
         height (in number of tiles) of the map.
     */
     public TileMap(int width, int height) {
-        tiles = new Image[width][height];
-        sprites = new LinkedList();
+        this(width, height, null);
+    }
+
+
+    /**
+        Creates a new TileMap with the specified width and
+        height (in number of tiles) that loads its chunks from
+        the specified ChunkSource as the camera moves. If the
+        source is null, every chunk is always loaded.
+    */
+    public TileMap(int width, int height, ChunkSource chunkSource) {
+        this(width, height, chunkSource, null);
+    }
+
+
+    /**
+        Creates a new TileMap with the specified width and
+        height (in number of tiles) that loads its chunks from
+        the specified ChunkSource as the camera moves, and parks
+        the Sprites of evicted chunks in the specified
+        ResourceManager's pools. If resourceManager is null,
+        Sprites stay in the map when their chunk is evicted.
+    */
+    public TileMap(int width, int height, ChunkSource chunkSource,
+        ResourceManager resourceManager)
+    {
+        this.width = width;
+        this.height = height;
+        this.chunkSource = chunkSource;
+        this.resourceManager = resourceManager;
+        chunksAcross = (width + CHUNK_MASK) >> CHUNK_BITS;
+        chunksDown = (height + CHUNK_MASK) >> CHUNK_BITS;
+        chunks = new Image[chunksAcross * chunksDown][];
+        loaded = new boolean[chunks.length];
+        spawned = new boolean[chunks.length];
+        parked = new SavedSprites[chunks.length];
+        blocksAcross = (width + BLOCK_SIZE - 1) >> BLOCK_BITS;
+        blockVersions = new int[blocksAcross *
+            ((height + BLOCK_SIZE - 1) >> BLOCK_BITS)];
+        if (chunkSource == null) {
+            Arrays.fill(loaded, true);
+            Arrays.fill(spawned, true);
+        }
+        sprites = new SpriteList();
+        spriteGrid = new SpriteGrid(TileMapRenderer.TILE_SIZE_BITS);
+        creatures = new CreatureStore();
         player = null;
     }
 
@@ -36,7 +138,7 @@ public class TileMap {
         Gets the width of this TileMap (number of tiles across).
     */
     public int getWidth() {
-        return tiles.length;
+        return width;
     }
 
 
@@ -44,24 +146,28 @@ public class TileMap {
         Gets the height of this TileMap (number of tiles down).
     */
     public int getHeight() {
-        return tiles[0].length;
+        return height;
     }
 
 
     /**
         Gets the tile at the specified location. Returns null if
-        no tile is at the location or if the location is out of
-        bounds.
+        no tile is at the location, if the location is out of
+        bounds, or if its chunk isn't loaded.
     */
     public Image getTile(int x, int y) {
-        if (x < 0 || x >= getWidth() ||
-            y < 0 || y >= getHeight())
+        if (x < 0 || x >= width ||
+            y < 0 || y >= height)
         {
             return null;
         }
-        else {
-            return tiles[x][y];
+        Image[] chunk = chunks[chunkIndex(x >> CHUNK_BITS,
+            y >> CHUNK_BITS)];
+        if (chunk == null) {
+            return null;
         }
+        return chunk[((y & CHUNK_MASK) << CHUNK_BITS) |
+            (x & CHUNK_MASK)];
     }
 
 
@@ -69,7 +175,246 @@ public class TileMap {
         Sets the tile at the specified location.
     */
     public void setTile(int x, int y, Image tile) {
-        tiles[x][y] = tile;
+        int index = chunkIndex(x >> CHUNK_BITS, y >> CHUNK_BITS);
+        Image[] chunk = chunks[index];
+        if (chunk == null) {
+            if (tile == null) {
+                return;
+            }
+            chunk = new Image[CHUNK_SIZE * CHUNK_SIZE];
+            chunks[index] = chunk;
+        }
+        int tileIndex = ((y & CHUNK_MASK) << CHUNK_BITS) |
+            (x & CHUNK_MASK);
+        if (chunk[tileIndex] != tile) {
+            chunk[tileIndex] = tile;
+            blockVersions[(y >> BLOCK_BITS) * blocksAcross +
+                (x >> BLOCK_BITS)]++;
+        }
+    }
+
+
+    /**
+        Gets the version of the block of tiles at the specified
+        block location (in blocks, not tiles). The version
+        changes whenever a tile in the block is set or the block's
+        chunk is evicted. Blocks outside the map are always
+        version 0.
+    */
+    public int getBlockVersion(int blockX, int blockY) {
+        if (blockX < 0 || blockX >= blocksAcross || blockY < 0 ||
+            blockY * blocksAcross >= blockVersions.length)
+        {
+            return 0;
+        }
+        return blockVersions[blockY * blocksAcross + blockX];
+    }
+
+
+    /**
+        Checks if the chunk holding the specified tile is loaded.
+        Tiles outside the map count as loaded.
+    */
+    public boolean isLoaded(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return true;
+        }
+        return loaded[chunkIndex(x >> CHUNK_BITS, y >> CHUNK_BITS)];
+    }
+
+
+    /**
+        Sets the distance, in chunks, from the camera chunk at
+        which chunks are loaded. Chunks more than one chunk
+        further away than that are evicted.
+    */
+    public void setStreamRadius(int streamRadius) {
+        this.streamRadius = Math.max(streamRadius, 1);
+        centerChunkX = Integer.MIN_VALUE;
+    }
+
+
+    /**
+        Loads the chunks around the specified tile (usually where
+        the camera is) and evicts chunks that are far away. Does
+        nothing if this map doesn't stream from a ChunkSource, or
+        if the camera is still in the same chunk as last time.
+        <p>
+        Sprites in a chunk are only spawned from the source the
+        first time it's loaded, so killed creatures don't come
+        back; after that, only the Sprites parked when it was
+        evicted are.
+        <p>
+        Only the chunks near the old and new camera chunks are
+        looked at, so the time this takes doesn't depend on the
+        size of the map.
+    */
+    public void updateStreaming(int tileX, int tileY) {
+        int chunkX = tileX >> CHUNK_BITS;
+        int chunkY = tileY >> CHUNK_BITS;
+        if (chunkSource == null ||
+            (chunkX == centerChunkX && chunkY == centerChunkY))
+        {
+            return;
+        }
+        int oldChunkX = centerChunkX;
+        int oldChunkY = centerChunkY;
+        centerChunkX = chunkX;
+        centerChunkY = chunkY;
+
+        // every loaded chunk is within streamRadius + 1 chunks of
+        // the old camera chunk (if there is one), so that's where
+        // chunks to evict can be
+        int numEvicted;
+        if (oldChunkX == Integer.MIN_VALUE) {
+            numEvicted = evictChunks(0, 0, chunksAcross, chunksDown);
+        }
+        else {
+            int r = streamRadius + 1;
+            numEvicted = evictChunks(oldChunkX - r, oldChunkY - r,
+                oldChunkX + r + 1, oldChunkY + r + 1);
+        }
+
+        int fromX = Math.max(chunkX - streamRadius, 0);
+        int fromY = Math.max(chunkY - streamRadius, 0);
+        int toX = Math.min(chunkX + streamRadius + 1, chunksAcross);
+        int toY = Math.min(chunkY + streamRadius + 1, chunksDown);
+        for (int cy=fromY; cy<toY; cy++) {
+            for (int cx=fromX; cx<toX; cx++) {
+                if (!loaded[chunkIndex(cx, cy)]) {
+                    loadChunk(cx, cy);
+                }
+            }
+        }
+
+        if (numEvicted > 0) {
+            parkSprites();
+        }
+    }
+
+
+    /**
+        Evicts the loaded chunks in the specified rectangle of
+        chunks that are more than streamRadius + 1 chunks from the
+        camera chunk. Returns the number evicted.
+    */
+    private int evictChunks(int fromX, int fromY, int toX, int toY) {
+        fromX = Math.max(fromX, 0);
+        fromY = Math.max(fromY, 0);
+        toX = Math.min(toX, chunksAcross);
+        toY = Math.min(toY, chunksDown);
+        int numEvicted = 0;
+        for (int cy=fromY; cy<toY; cy++) {
+            for (int cx=fromX; cx<toX; cx++) {
+                int distance = Math.max(Math.abs(cx - centerChunkX),
+                    Math.abs(cy - centerChunkY));
+                if (distance > streamRadius + 1 &&
+                    loaded[chunkIndex(cx, cy)])
+                {
+                    evictChunk(cx, cy);
+                    numEvicted++;
+                }
+            }
+        }
+        return numEvicted;
+    }
+
+
+    /**
+        Loads every chunk of this map that isn't loaded yet.
+    */
+    public void loadAllChunks() {
+        for (int cy=0; cy<chunksDown; cy++) {
+            for (int cx=0; cx<chunksAcross; cx++) {
+                if (!loaded[chunkIndex(cx, cy)]) {
+                    loadChunk(cx, cy);
+                }
+            }
+        }
+        // chunks far from the camera are loaded now, so the next
+        // updateStreaming() has to look at all of them
+        centerChunkX = Integer.MIN_VALUE;
+    }
+
+
+    private void loadChunk(int chunkX, int chunkY) {
+        int index = chunkIndex(chunkX, chunkY);
+        try {
+            chunkSource.loadChunk(this,
+                chunkX << CHUNK_BITS, chunkY << CHUNK_BITS,
+                CHUNK_SIZE, !spawned[index]);
+            loaded[index] = true;
+            spawned[index] = true;
+        }
+        catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        if (parked[index] != null) {
+            parked[index].respawn(this, resourceManager);
+            parked[index] = null;
+        }
+    }
+
+
+    /**
+        Parks the Sprites whose chunk isn't loaded: saves their
+        state with the chunk, removes them, and returns them to
+        their pools. A Sprite's chunk is the one holding its
+        center, moved inside the map if the Sprite is outside it.
+    */
+    private void parkSprites() {
+        if (resourceManager == null) {
+            return;
+        }
+        // removing a Sprite moves the last one into its index,
+        // so walk backwards
+        for (int i=sprites.size()-1; i>=0; i--) {
+            Sprite sprite = sprites.get(i);
+            if (sprite.isRemovePending()) {
+                continue;
+            }
+            int tileX = TileMapRenderer.pixelsToTiles(
+                sprite.getX() + sprite.getWidth() / 2);
+            int tileY = TileMapRenderer.pixelsToTiles(
+                sprite.getY() + sprite.getHeight() / 2);
+            int index = chunkIndex(
+                Math.min(Math.max(tileX, 0), width - 1) >> CHUNK_BITS,
+                Math.min(Math.max(tileY, 0), height - 1) >> CHUNK_BITS);
+            if (!loaded[index]) {
+                if (parked[index] == null) {
+                    parked[index] = new SavedSprites();
+                }
+                parked[index].add(sprite);
+                removeSprite(sprite);
+                resourceManager.recycle(sprite);
+            }
+        }
+    }
+
+
+    private void evictChunk(int chunkX, int chunkY) {
+        int index = chunkIndex(chunkX, chunkY);
+        chunks[index] = null;
+        loaded[index] = false;
+
+        // the chunk's tiles are gone, so its blocks have changed
+        int blocksPerChunk = CHUNK_SIZE >> BLOCK_BITS;
+        int fromBlockX = chunkX * blocksPerChunk;
+        int fromBlockY = chunkY * blocksPerChunk;
+        int toBlockX = Math.min(fromBlockX + blocksPerChunk,
+            blocksAcross);
+        int toBlockY = Math.min(fromBlockY + blocksPerChunk,
+            blockVersions.length / blocksAcross);
+        for (int by=fromBlockY; by<toBlockY; by++) {
+            for (int bx=fromBlockX; bx<toBlockX; bx++) {
+                blockVersions[by * blocksAcross + bx]++;
+            }
+        }
+    }
+
+
+    private int chunkIndex(int chunkX, int chunkY) {
+        return chunkY * chunksAcross + chunkX;
     }
 
 
@@ -94,23 +439,187 @@ public class TileMap {
     */
     public void addSprite(Sprite sprite) {
         sprites.add(sprite);
+        spriteGrid.add(sprite);
+        if (sprite instanceof Creature) {
+            creatures.add((Creature)sprite);
+        }
     }
 
 
     /**
-        Removes a Sprite object from this map.
+        Removes a Sprite object from this map right away. Don't
+        call this while walking the map's Sprites by index; use
+        removeSpriteLater() instead.
     */
     public void removeSprite(Sprite sprite) {
         sprites.remove(sprite);
+        spriteGrid.remove(sprite);
+        if (sprite instanceof Creature) {
+            creatures.remove((Creature)sprite);
+        }
     }
 
 
     /**
-        Gets an Iterator of all the Sprites in this map,
-        excluding the player Sprite.
+        Removes a Sprite object from this map at the end of the
+        tick, when flushRemovals() is called. The Sprite stops
+        colliding and moving right away, but stays in the list of
+        Sprites until then.
     */
-    public Iterator getSprites() {
-        return sprites.iterator();
+    public void removeSpriteLater(Sprite sprite) {
+        sprites.removeLater(sprite);
+        spriteGrid.remove(sprite);
+        if (sprite instanceof Creature) {
+            creatures.remove((Creature)sprite);
+        }
     }
 
+
+    /**
+        Removes the Sprites passed to removeSpriteLater(), and
+        returns them to the specified ResourceManager's pools
+        (if not null).
+    */
+    public void flushRemovals(ResourceManager resourceManager) {
+        // take the sprites out of the list before they go back
+        // to their pools, since the map loader thread may hand
+        // them out again (and add them to another map) right away
+        int numRecycled = 0;
+        if (resourceManager != null) {
+            int numPending = sprites.getNumPending();
+            if (recycled.length < numPending) {
+                recycled = new Sprite[Math.max(numPending,
+                    recycled.length * 2)];
+            }
+            for (int i=0; i<numPending; i++) {
+                Sprite sprite = sprites.getPending(i);
+                // skip sprites already removed some other way
+                if (sprite.isRemovePending()) {
+                    recycled[numRecycled++] = sprite;
+                }
+            }
+        }
+        sprites.flushRemovals();
+        for (int i=0; i<numRecycled; i++) {
+            resourceManager.recycle(recycled[i]);
+            recycled[i] = null;
+        }
+    }
+
+
+    /**
+        Gets the number of Sprites in this map, excluding the
+        player Sprite.
+    */
+    public int getNumSprites() {
+        return sprites.size();
+    }
+
+
+    /**
+        Gets the Sprite at the specified index, from 0 to
+        getNumSprites()-1. Indexes change when Sprites are
+        removed; use getSprite(long) to keep track of a Sprite.
+    */
+    public Sprite getSprite(int index) {
+        return sprites.get(index);
+    }
+
+
+    /**
+        Gets the Sprite with the specified handle (see
+        Sprite.getHandle()), or null if it has been removed from
+        this map.
+    */
+    public Sprite getSprite(long handle) {
+        return sprites.find(handle);
+    }
+
+
+    /**
+        Gets the SpriteGrid of all the Sprites in this map,
+        excluding the player Sprite, for finding Sprites by
+        location.
+    */
+    public SpriteGrid getSpriteGrid() {
+        return spriteGrid;
+    }
+
+
+    /**
+        Gets the CreatureStore holding the position, velocity and
+        state of every Creature in this map, excluding the
+        player.
+    */
+    public CreatureStore getCreatures() {
+        return creatures;
+    }
+
+
+    /**
+        The saved state of the Sprites parked in an evicted chunk.
+    */
+    private static class SavedSprites {
+
+        int size;
+        Class<?>[] types = new Class<?>[4];
+        float[] x = new float[4];
+        float[] y = new float[4];
+        float[] dx = new float[4];
+        float[] dy = new float[4];
+        // Creature state and health (0 for other Sprites)
+        byte[] state = new byte[4];
+        int[] health = new int[4];
+
+        void add(Sprite sprite) {
+            if (size == types.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                dx = Arrays.copyOf(dx, capacity);
+                dy = Arrays.copyOf(dy, capacity);
+                state = Arrays.copyOf(state, capacity);
+                health = Arrays.copyOf(health, capacity);
+            }
+            types[size] = sprite.getClass();
+            x[size] = sprite.getX();
+            y[size] = sprite.getY();
+            dx[size] = sprite.getVelocityX();
+            dy[size] = sprite.getVelocityY();
+            if (sprite instanceof Creature) {
+                Creature creature = (Creature)sprite;
+                state[size] = (byte)creature.getState();
+                health[size] = creature.health;
+            }
+            size++;
+        }
+
+
+        /**
+            Adds the saved Sprites back to the map, taking them
+            from the ResourceManager's pools. Parked Sprites were
+            added to the map in the opposite order, so they are
+            added back in the order they were in before.
+        */
+        void respawn(TileMap map, ResourceManager resourceManager) {
+            for (int i=size-1; i>=0; i--) {
+                Sprite sprite = resourceManager.obtainSprite(types[i]);
+                if (sprite == null) {
+                    continue;
+                }
+                sprite.setX(x[i]);
+                sprite.setY(y[i]);
+                sprite.setVelocityX(dx[i]);
+                sprite.setVelocityY(dy[i]);
+                sprite.savePosition();
+                if (sprite instanceof Creature) {
+                    Creature creature = (Creature)sprite;
+                    creature.setState(state[i]);
+                    creature.health = health[i];
+                }
+                map.addSprite(sprite);
+            }
+        }
+    }
 }
@@ -1,11 +1,10 @@
 package tilegame;
 
 import java.awt.*;
-import java.util.Enumeration;
-import java.util.Iterator;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import graphics.Sprite;
+import graphics.TextureAtlas;
 import tilegame.sprites.*;
 
 /**
@@ -25,20 +24,50 @@ import tilegame.sprites.*;
 public class TileMapRenderer {
 
     private static final int TILE_SIZE = 64;
+
+    /**
+        The phases of drawing a frame, for getPhaseNanos().
+    */
+    public static final int PHASE_CAPTURE = 0;
+    public static final int PHASE_BACKGROUND = 1;
+    public static final int PHASE_TILES = 2;
+    public static final int PHASE_SPRITES = 3;
+    public static final int PHASE_HUD = 4;
+    public static final int NUM_PHASES = 5;
+
+    // fonts are made once, not every frame
+    private static final Font HUD_FONT =
+        new Font("Impact", Font.PLAIN, 30);
+    private static final Font GAME_OVER_FONT =
+        new Font("Impact", Font.PLAIN, 60);
     // the size in bits of the tile
     // Math.pow(2, TILE_SIZE_BITS) == TILE_SIZE
-    private static final int TILE_SIZE_BITS = 6;
+    static final int TILE_SIZE_BITS = 6;
 
-    private Image plx1;
-    private Image plx2;
-    private Image plx3;
-    private Image plx4;
-    private Image plx5;
+    private ParallaxBackground background = new ParallaxBackground();
 
     private GameManager gm;
+    private TileChunkCache tileCache = new TileChunkCache();
+    private DebugOverlay debugOverlay = new DebugOverlay();
+    // snapshot used by draw(Graphics2D, TileMap, ...), and the
+    // snapshot being drawn
+    private RenderSnapshot snapshot = new RenderSnapshot();
+    private RenderSnapshot current;
+    // the map capture() last saw, and its RenderSnapshot.mapId
+    private TileMap capturedMap;
+    private int capturedMapId;
+    // time spent in each phase, if timing is on
+    private boolean timingEnabled;
+    private boolean hudEnabled = true;
+    private long[] phaseNanos = new long[NUM_PHASES];
+    // sprites found near the screen by capture()
+    private Sprite[] visibleSprites = new Sprite[64];
 
     public TileMapRenderer(GameManager gm){
         this.gm = gm;
+        if (gm.resourceManager != null) {
+            tileCache.setAtlas(gm.resourceManager.getAtlas());
+        }
         System.out.println("created TileMapRenderer");
     }
 
@@ -78,191 +107,448 @@ public class TileMapRenderer {
 
 
     /**
-        Sets the background to draw.
+        Gets the horizontal scrolling position of the map for a
+        screen centered around the specified player position.
+    */
+    public static int getOffsetX(TileMap map, int screenWidth,
+        int playerX)
+    {
+        return getOffsetX(map.getWidth(), screenWidth, playerX);
+    }
+
+
+    private static int getOffsetX(int mapTilesAcross, int screenWidth,
+        int playerX)
+    {
+        int mapWidth = tilesToPixels(mapTilesAcross);
+        int offsetX = screenWidth / 2 - playerX - TILE_SIZE;
+        offsetX = Math.min(offsetX, 0);
+        offsetX = Math.max(offsetX, screenWidth - mapWidth);
+        return offsetX;
+    }
+
+
+    /**
+        Gets the vertical scrolling position of the map for a
+        screen of the specified height. The bottom of the map
+        stays at the bottom of the screen, unless the player
+        climbs into the top quarter of the screen; then the map
+        scrolls down to follow, until its top reaches the top of
+        the screen.
+    */
+    public static int getOffsetY(TileMap map, int screenHeight,
+        int playerY)
+    {
+        return getOffsetY(map.getHeight(), screenHeight, playerY);
+    }
+
+
+    private static int getOffsetY(int mapTilesDown, int screenHeight,
+        int playerY)
+    {
+        int mapHeight = tilesToPixels(mapTilesDown);
+        int offsetY = screenHeight - mapHeight;
+        int margin = screenHeight / 4;
+        if (playerY + offsetY < margin) {
+            offsetY = Math.min(margin - playerY,
+                Math.max(screenHeight - mapHeight, 0));
+        }
+        return offsetY;
+    }
+
+
+    /**
+        Sets the parallax background layers to draw, from the
+        farthest to the nearest. Layers scroll with the default
+        ParallaxBackground divisors.
+    */
+    public void setBackground(Image... layers) {
+        background.setLayers(layers);
+    }
+
+
+    /**
+        Gets the parallax background, to change its layers and
+        divisors.
+    */
+    public ParallaxBackground getBackground() {
+        return background;
+    }
+
+
+
+
+    /**
+        Sets whether the HUD (or the debug overlay or game over
+        screen) is drawn over the map. On by default.
     */
-    public void setBackground(Image plx1,Image plx2,Image plx3,Image plx4,Image plx5) {
-        this.plx1 = plx1;
-        this.plx2 = plx2;
-        this.plx3 = plx3;
-        this.plx4 = plx4;
-        this.plx5 = plx5;
+    public void setHudEnabled(boolean hudEnabled) {
+        this.hudEnabled = hudEnabled;
     }
 
 
+    /**
+        Sets whether the time spent in each phase of capture()
+        and draw() is added up. Timing is meant for benchmarks
+        where both run on the same thread.
+    */
+    public void setTimingEnabled(boolean timingEnabled) {
+        this.timingEnabled = timingEnabled;
+    }
 
 
     /**
-        Draws the specified TileMap.
+        Gets the total time, in nanoseconds, spent in a phase
+        (PHASE_CAPTURE, PHASE_BACKGROUND, and so on) since timing
+        was turned on or last reset.
+    */
+    public long getPhaseNanos(int phase) {
+        return phaseNanos[phase];
+    }
+
+
+    /**
+        Sets the time spent in every phase back to zero.
+    */
+    public void resetTimings() {
+        for (int i=0; i<NUM_PHASES; i++) {
+            phaseNanos[i] = 0;
+        }
+    }
+
+
+    /**
+        If timing is on, adds the time since startTime to a
+        phase, and returns the current time to start the next
+        phase from.
+    */
+    private long endPhase(int phase, long startTime) {
+        if (!timingEnabled) {
+            return 0;
+        }
+        long time = System.nanoTime();
+        phaseNanos[phase] += time - startTime;
+        return time;
+    }
+
+
+    /**
+        Draws the specified TileMap. This is the same as taking
+        a snapshot of it with capture() and drawing the snapshot
+        right away.
     */
     public void draw(Graphics2D g, TileMap map,
         int screenWidth, int screenHeight)
     {
+        capture(snapshot, map, screenWidth, screenHeight,
+            gm.getInterpolation());
+        draw(g, snapshot, screenWidth, screenHeight);
+    }
+
+
+    /**
+        Takes a snapshot of everything needed to draw the
+        specified TileMap on a screen of the specified size, at
+        the specified interpolation between the last two
+        simulation ticks. This must be called on the thread
+        running the simulation.
+        <p>
+        Only sprites on (or very near) the screen are looked at
+        and go into the snapshot.
+    */
+    public void capture(RenderSnapshot s, TileMap map,
+        int screenWidth, int screenHeight, float interpolation)
+    {
+        long time = (timingEnabled ? System.nanoTime() : 0);
         Player player = map.getPlayer();
-        int mapWidth = tilesToPixels(map.getWidth());
+        if (map != capturedMap) {
+            capturedMap = map;
+            capturedMapId++;
+        }
+        s.mapId = capturedMapId;
+        s.mapWidth = map.getWidth();
+        s.mapHeight = map.getHeight();
+        s.interpolation = interpolation;
+        s.captureTime = System.nanoTime();
+        s.tickNanos = TimeUnit.MILLISECONDS.toNanos(
+            gm.getTickMillis());
+        s.setPlayer(player);
+
+        int offsetX = getOffsetX(map, screenWidth,
+            Math.round(player.getInterpolatedX(interpolation)));
+        int offsetY = getOffsetY(map, screenHeight,
+            Math.round(player.getInterpolatedY(interpolation)));
+        captureTiles(s, map, player, screenWidth, screenHeight);
+
+        // find the sprites on the screen. the camera may move a
+        // little before the snapshot is drawn, so look a tile
+        // further
+        int count = findSprites(map, -offsetX - TILE_SIZE,
+            -offsetY - TILE_SIZE, screenWidth + TILE_SIZE * 2,
+            screenHeight + TILE_SIZE * 2);
+
+        s.clearSprites();
+        for (int i=0; i<count; i++) {
+            Sprite sprite = visibleSprites[i];
+            visibleSprites[i] = null;
+            int x = Math.round(sprite.getInterpolatedX(
+                interpolation)) + offsetX;
+            int y = Math.round(sprite.getInterpolatedY(
+                interpolation)) + offsetY + 10;
+
+            // only draw sprites that are on screen
+            if (x + sprite.getWidth() > -TILE_SIZE &&
+                x < screenWidth + TILE_SIZE &&
+                y + sprite.getHeight() > -TILE_SIZE &&
+                y < screenHeight + TILE_SIZE)
+            {
+                s.addSprite(sprite);
+            }
+        }
+
+        s.secondsPassed = gm.secondsPassed;
+        s.level = player.level;
+        s.health = player.health;
+        s.maxHP = player.maxHP;
+        s.damage = player.damage;
+        s.score = player.score;
+        s.exp = player.exp;
+        s.toNextLevel = player.toNextLevel;
+        s.numBaddies = gm.resourceManager.numBaddies;
+        s.doneTime = gm.doneTime;
+        s.win = player.win;
+        s.gameOver = (gm.resourceManager.getCurrentMap() == 4);
+        s.debug = player.drawDebug;
+        s.playerVelocityX = player.getVelocityX();
+        s.playerVelocityY = player.getVelocityY();
+        s.onGround = player.onGround;
+        s.jumped = player.jumped;
+        s.facingLeft = player.facingLeft;
+        s.facingRight = player.facingRight;
+        s.playerState = player.getStateString(player.getState());
+        s.totalSprites = map.getNumSprites();
+        s.updateNanos = gm.getUpdateNanos();
+        endPhase(PHASE_CAPTURE, time);
+    }
+
+
+    /**
+        Copies the tiles of the blocks that may be on the screen
+        into a snapshot. The frame is drawn with the player
+        somewhere between their positions at the last two ticks,
+        so the blocks under the screen at both positions are
+        copied. The renderer never reads the map's own tiles,
+        which the simulation may be changing at the same time.
+    */
+    private void captureTiles(RenderSnapshot s, TileMap map,
+        Player player, int screenWidth, int screenHeight)
+    {
+        int offsetX1 = getOffsetX(map, screenWidth,
+            Math.round(player.getInterpolatedX(0)));
+        int offsetX2 = getOffsetX(map, screenWidth,
+            Math.round(player.getX()));
+        int offsetY1 = getOffsetY(map, screenHeight,
+            Math.round(player.getInterpolatedY(0)));
+        int offsetY2 = getOffsetY(map, screenHeight,
+            Math.round(player.getY()));
+        int blockPixels = tilesToPixels(TileMap.BLOCK_SIZE);
+        int lastBlockX = (map.getWidth() - 1) >> TileMap.BLOCK_BITS;
+        int lastBlockY = (map.getHeight() - 1) >> TileMap.BLOCK_BITS;
+        s.setTiles(map,
+            Math.max(Math.floorDiv(-Math.max(offsetX1, offsetX2),
+                blockPixels), 0),
+            Math.max(Math.floorDiv(-Math.max(offsetY1, offsetY2),
+                blockPixels), 0),
+            Math.min(Math.floorDiv(screenWidth - 1 -
+                Math.min(offsetX1, offsetX2), blockPixels), lastBlockX),
+            Math.min(Math.floorDiv(screenHeight - 1 -
+                Math.min(offsetY1, offsetY2), blockPixels), lastBlockY));
+    }
+
+
+    /**
+        Draws a snapshot taken with capture(). This doesn't look
+        at the map or the real sprites, so it can run on another
+        thread while the simulation goes on.
+    */
+    public void draw(Graphics2D g, RenderSnapshot s,
+        int screenWidth, int screenHeight)
+    {
+        if (s.mapId == 0) {
+            return;
+        }
+        long drawStart = System.nanoTime();
+        long time = drawStart;
+        int mapWidth = tilesToPixels(s.mapWidth);
+
+        // draw sprites between the last two simulation ticks
+        float alpha = s.getInterpolation(System.nanoTime());
+        int playerX = Math.round(
+            interpolate(s.playerPrevX, s.playerX, alpha));
 
         // get the scrolling position of the map
         // based on player's position
-        int offsetX = screenWidth / 2 -
-            Math.round(player.getX()) - TILE_SIZE;
-        offsetX = Math.min(offsetX, 0);
-        offsetX = Math.max(offsetX, screenWidth - mapWidth);
-        int offsetX2 = screenWidth / 2 -
-            Math.round(player.getX()) - TILE_SIZE;
-        offsetX2 = Math.min(offsetX, 0);
-        offsetX2 = Math.max(offsetX, screenWidth - mapWidth);
+        int offsetX = getOffsetX(s.mapWidth, screenWidth, playerX);
 
         // get the y offset to draw all sprites and tiles
-        int offsetY = screenHeight -
-            tilesToPixels(map.getHeight());
-
-        // draw black background, if needed
-        if (plx1 == null ||
-            screenHeight > plx1.getHeight(null))
-        {
-            g.setColor(Color.black);
-            g.fillRect(0, 0, screenWidth, screenHeight);
-        }
+        int playerY = Math.round(
+            interpolate(s.playerPrevY, s.playerY, alpha));
+        int offsetY = getOffsetY(s.mapHeight, screenHeight, playerY);
+
+        // draw parallax background layers
+        background.draw(g, offsetX, mapWidth, screenWidth,
+            screenHeight);
+        time = endPhase(PHASE_BACKGROUND, time);
+
+        // draw the visible tiles from pre-drawn blocks
+        tileCache.draw(g, s, offsetX, offsetY,
+            screenWidth, screenHeight);
+        time = endPhase(PHASE_TILES, time);
+
+        // draw player
+        drawSprite(g, s.playerRegion, s.playerImage,
+            playerX + offsetX, playerY + offsetY);
 
-        // draw parallax background image
-        if (plx1 != null) {
-            int x = offsetX *
-                (screenWidth - plx1.getWidth(null)) /
-                (screenWidth - mapWidth);
-            x = x/7;
-            int y = screenHeight - plx1.getHeight(null);
-            g.drawImage(plx1, x, y, null);
+        // draw sprites
+        for (int i=0; i<s.numSprites; i++) {
+            int x = Math.round(interpolate(s.prevX[i], s.x[i], alpha)) +
+                offsetX;
+            int y = Math.round(interpolate(s.prevY[i], s.y[i], alpha)) +
+                offsetY + 10;
+            drawSprite(g, s.regions[i], s.images[i], x, y);
         }
-        if (plx2 != null) {
-            int x = offsetX *
-                (screenWidth - plx2.getWidth(null)) /
-                (screenWidth - mapWidth);
-            x = x / 5;
-            int y = screenHeight - plx2.getHeight(null);
-            g.drawImage(plx2, x, y, null);
+        time = endPhase(PHASE_SPRITES, time);
+
+        // draw gui over everything
+        debugOverlay.addFrame(s, System.nanoTime() - drawStart);
+        current = s;
+        if (!hudEnabled) {
+            // nothing over the map
         }
-        if (plx3 != null) {
-            int x = offsetX *
-                (screenWidth - plx3.getWidth(null)) /
-                (screenWidth - mapWidth);
-            x = x / 4;
-            int y = screenHeight - plx3.getHeight(null);
-            g.drawImage(plx3, x, y, null);
+        else if (s.gameOver) {
+            drawGameOverGUI(g);
         }
-        if (plx4 != null) {
-            int x = offsetX *
-                (screenWidth - plx4.getWidth(null)) /
-                (screenWidth - mapWidth);
-            x = x / 3;
-            int y = screenHeight - plx4.getHeight(null);
-            g.drawImage(plx4, x, y, null);
+        else if (s.debug) {
+            drawDebugGUI(g);
         }
-        if (plx5 != null) {
-            int x = offsetX *
-                (screenWidth - plx5.getWidth(null)) /
-                (screenWidth - mapWidth);
-            x = x / 2;
-            int y = screenHeight - plx5.getHeight(null);
-            g.drawImage(plx5, x, y, null);
+        else {
+            drawGUI(g);
         }
+        endPhase(PHASE_HUD, time);
+    }
 
-        // draw the visible tiles
-        int firstTileX = pixelsToTiles(-offsetX);
-        int lastTileX = firstTileX +
-            pixelsToTiles(screenWidth) + 1;
-        for (int y=0; y<map.getHeight(); y++) {
-            for (int x=firstTileX; x <= lastTileX; x++) {
-                Image image = map.getTile(x, y);
-                if (image != null) {
-                    g.drawImage(image,
-                        tilesToPixels(x) + offsetX,
-                        tilesToPixels(y) + offsetY,
-                        null);
-                }
-            }
+
+    /**
+        Finds the sprites in the map that could be in the
+        specified rectangle, putting them in visibleSprites.
+        Returns the number found.
+    */
+    private int findSprites(TileMap map, int x, int y, int width,
+        int height)
+    {
+        int count = map.getSpriteGrid().findAll(x, y, width, height,
+            visibleSprites);
+        if (count > visibleSprites.length) {
+            visibleSprites = new Sprite[count * 2];
+            count = map.getSpriteGrid().findAll(x, y, width, height,
+                visibleSprites);
         }
+        return count;
+    }
 
-        // draw player
-        g.drawImage(player.getImage(),
-            Math.round(player.getX()) + offsetX,
-            Math.round(player.getY()) + offsetY,
-//            player.newWidth,
-//            player.newHeight,
-            null);
 
-        // draw sprites
-        Iterator i = map.getSprites();
-        while (i.hasNext()) {
-            Sprite sprite = (Sprite)i.next();
-            int x = Math.round(sprite.getX()) + offsetX;
-            int y = Math.round(sprite.getY()) + offsetY + 10;
-            g.drawImage(
-                    sprite.getImage(), x, y,
-//                    sprite.newWidth,
-//                    sprite.newHeight,
-                    null
-            );
-
-            // wake up the creature when it's on screen
-            if (sprite instanceof Creature &&
-                x >= 0 && x < screenWidth)
-            {
-                ((Creature)sprite).wakeUp();
-            }
+    private static float interpolate(float from, float to,
+        float alpha)
+    {
+        return from + (to - from) * alpha;
+    }
+
+
+    /**
+        Draws an image from the TextureAtlas if it's in one,
+        otherwise on its own.
+    */
+    private void drawSprite(Graphics2D g, TextureAtlas.Region region,
+        Image image, int x, int y)
+    {
+        if (region != null) {
+            region.draw(g, x, y);
         }
-        // draw gui over everything
-        if(gm.resourceManager.getCurrentMap() == 4){
-            drawGameOverGUI(g);
-        }else{
-            if(gm.map.getPlayer().drawDebug) drawDebugGUI(g);
-            else drawGUI(g);
+        else {
+            g.drawImage(image, x, y, null);
         }
-
     }
 
     public void drawDebugGUI(Graphics2D g2){
-        Font f = new Font ("Times New Roman", Font.PLAIN, (30));
-        g2.setFont(f);
-        g2.setColor(Color.RED);
-        ConcurrentHashMap<String, String> hm = gm.map.getPlayer().debugString();
-        Enumeration e = hm.keys();
-        String s;
-        int x = 10;
-        int y = 70;
-        for (int i = 0; i < hm.size(); i++) {
-            s = e.nextElement().toString();
-            g2.drawString(s + hm.get(s), x , y);
-            y += 50;
-        }
+        debugOverlay.draw(g2, current, 10, 70);
     }
 
     public void drawGUI(Graphics2D g2){
-        Font f = new Font ("Impact", Font.PLAIN, (30));
-        g2.setFont(f);
-        g2.setColor(Color.BLUE);
-        g2.drawString("Time: " + Long.toString(gm.secondsPassed),10,70);
-        g2.drawString("Level: " + Long.toString(gm.map.getPlayer().level),180,70);
-        g2.drawString("HP: " + Integer.toString(gm.map.getPlayer().health) + "/" + Integer.toString(gm.map.getPlayer().maxHP),10,130);
-        g2.drawString("DMG: " + Integer.toString(gm.map.getPlayer().damage),10,190);
-        g2.drawString("Score: " + Integer.toString(gm.map.getPlayer().score),10,240);
-        g2.drawString("EXP: " + Integer.toString(gm.map.getPlayer().exp) + "/" + gm.map.getPlayer().toNextLevel,180,240);
-        g2.drawString("Baddies: " + Integer.toString(gm.resourceManager.numBaddies),10,290);
-//        g2.drawString("DIO HP: " + Integer.toString(gm.resourceManager.dioSprite.health),500,70); // TODO: 07-Nov-19 fix this
+        gameHud.draw(g2, 0, 0);
     }
 
     public void drawGameOverGUI(Graphics2D g2){
-        Font f = new Font ("Impact", Font.PLAIN, (60));
-        g2.setFont(f);
-        g2.setColor(Color.BLUE);
-        g2.drawString("Time: " + Long.toString(gm.doneTime),10,70);
-        g2.drawString("HP: " + Integer.toString(gm.map.getPlayer().health),10,130);
-        g2.drawString("DMG: " + Integer.toString(gm.map.getPlayer().damage),10,190);
-        g2.drawString("Score: " + Integer.toString(gm.map.getPlayer().score),10,240);
-//        g2.drawString("DIO HP: " + Integer.toString(gm.map.Dio().health),500,70);
-        if(gm.map.getPlayer().win) g2.drawString("you win :)",450,250);
-        else{
-            g2.drawString("you lose :(",450,250);
-            g2.drawString("plz kill dio!",450,350);
-        }
+        gameOverHud.draw(g2, 0, 0);
     }
 
+    /**
+        The HUD shown while playing.
+    */
+    private HudLayer gameHud = new HudLayer(9, 480, 320) {
+
+        protected void readValues(int[] values) {
+            values[0] = current.secondsPassed;
+            values[1] = current.level;
+            values[2] = current.health;
+            values[3] = current.maxHP;
+            values[4] = current.damage;
+            values[5] = current.score;
+            values[6] = current.exp;
+            values[7] = current.toNextLevel;
+            values[8] = current.numBaddies;
+        }
+
+        protected void render(Graphics2D g2, int[] values) {
+            g2.setFont(HUD_FONT);
+            g2.setColor(Color.BLUE);
+            g2.drawString("Time: " + values[0],10,70);
+            g2.drawString("Level: " + values[1],180,70);
+            g2.drawString("HP: " + values[2] + "/" + values[3],10,130);
+            g2.drawString("DMG: " + values[4],10,190);
+            g2.drawString("Score: " + values[5],10,240);
+            g2.drawString("EXP: " + values[6] + "/" + values[7],180,240);
+            g2.drawString("Baddies: " + values[8],10,290);
+//            g2.drawString("DIO HP: " + Integer.toString(gm.resourceManager.dioSprite.health),500,70); // TODO: 07-Nov-19 fix this
+        }
+    };
+
+    /**
+        The HUD shown after the last map.
+    */
+    private HudLayer gameOverHud = new HudLayer(5, 900, 380) {
+
+        protected void readValues(int[] values) {
+            values[0] = current.doneTime;
+            values[1] = current.health;
+            values[2] = current.damage;
+            values[3] = current.score;
+            values[4] = (current.win ? 1 : 0);
+        }
+
+        protected void render(Graphics2D g2, int[] values) {
+            g2.setFont(GAME_OVER_FONT);
+            g2.setColor(Color.BLUE);
+            g2.drawString("Time: " + values[0],10,70);
+            g2.drawString("HP: " + values[1],10,130);
+            g2.drawString("DMG: " + values[2],10,190);
+            g2.drawString("Score: " + values[3],10,240);
+//            g2.drawString("DIO HP: " + Integer.toString(gm.map.Dio().health),500,70);
+            if(values[4] != 0) g2.drawString("you win :)",450,250);
+            else{
+                g2.drawString("you lose :(",450,250);
+                g2.drawString("plz kill dio!",450,350);
+            }
+        }
+    };
+
 }
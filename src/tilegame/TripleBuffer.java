@@ -0,0 +1,74 @@
+package tilegame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+    The TripleBuffer class passes frames from one writer thread
+    to one reader thread without locks. There are three buffers:
+    one the writer is filling, one the reader is using, and one
+    holding the latest frame published by the writer. Publishing
+    and taking the latest frame are single atomic swaps, so
+    neither thread ever waits for the other; if the writer is
+    faster, the reader skips frames, and if the reader is faster,
+    it gets the same frame again.
+    <p>
+    The buffers are created up front and reused, so passing
+    frames doesn't allocate.
+*/
+public class TripleBuffer {
+
+    // the index of the middle buffer, plus NEW_FRAME if the
+    // writer has published into it since the reader last looked
+    private static final int INDEX_MASK = 3;
+    private static final int NEW_FRAME = 4;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle;
+    private int writeIndex;
+    private int readIndex;
+
+    /**
+        Creates a new TripleBuffer with the specified three
+        buffers. The reader starts out with the first one.
+    */
+    public TripleBuffer(Object first, Object second, Object third) {
+        buffers = new Object[] { first, second, third };
+        readIndex = 0;
+        middle = new AtomicInteger(1);
+        writeIndex = 2;
+    }
+
+
+    /**
+        Gets the buffer the writer should fill next. Only the
+        writer thread may call this.
+    */
+    public Object getWriteBuffer() {
+        return buffers[writeIndex];
+    }
+
+
+    /**
+        Publishes the buffer returned by getWriteBuffer() as the
+        latest frame, and takes another buffer to write into.
+        Only the writer thread may call this.
+    */
+    public void publish() {
+        int old = middle.getAndSet(writeIndex | NEW_FRAME);
+        writeIndex = old & INDEX_MASK;
+    }
+
+
+    /**
+        Gets the latest published frame. If nothing has been
+        published since the last call, the same buffer is
+        returned again. Only the reader thread may call this.
+    */
+    public Object getReadBuffer() {
+        if ((middle.get() & NEW_FRAME) != 0) {
+            int old = middle.getAndSet(readIndex);
+            readIndex = old & INDEX_MASK;
+        }
+        return buffers[readIndex];
+    }
+}
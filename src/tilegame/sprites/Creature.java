@@ -1,7 +1,5 @@
 package tilegame.sprites;
 
-import java.lang.reflect.Constructor;
-
 import graphics.Animation;
 import graphics.Sprite;
 
@@ -28,6 +26,11 @@ public abstract class Creature extends Sprite {
     protected int state;
     protected long stateTime;
 
+    // the CreatureStore holding this Creature's position,
+    // velocity and state, if any, and its id in the store
+    CreatureStore store;
+    int entityId = -1;
+
     public boolean onGround;
     public boolean jumped;
     public boolean isFalling;
@@ -54,28 +57,157 @@ public abstract class Creature extends Sprite {
         this.right = right;
         this.deadLeft = deadLeft;
         this.deadRight = deadRight;
+        resetCreature();
+    }
+
+
+    /**
+        Creates a copy of this Creature with its own copies of
+        the Animations. Subclasses construct themselves directly,
+        without reflection.
+    */
+    public abstract Object clone();
+
+
+    /**
+        Resets this Creature to the way it was when it was
+        created, so it can be reused. Subclasses that set up
+        stats in their constructor should override this to reset
+        them too.
+    */
+    public void reset() {
+        super.reset();
+        resetCreature();
+    }
+
+
+    private void resetCreature() {
         state = STATE_NORMAL;
+        stateTime = 0;
+        anim = right;
+        onGround = false;
+        jumped = false;
+        isFalling = false;
+        facingLeft = false;
+        facingRight = false;
         upTime = 30; // after 30 seconds, upgrade all baddies
         up = 0;
         exp = 1;
     }
 
 
-    public Object clone() {
-        // use reflection to create the correct subclass
-        Constructor constructor = getClass().getConstructors()[0];
-        try {
-            return constructor.newInstance(new Object[] {
-                (Animation)left.clone(),
-                (Animation)right.clone(),
-                (Animation)deadLeft.clone(),
-                (Animation)deadRight.clone()
-            });
+    /**
+        Moves this Creature's position, velocity and state into
+        the specified store.
+    */
+    void attach(CreatureStore store, int id) {
+        store.x[id] = x;
+        store.y[id] = y;
+        store.dx[id] = dx;
+        store.dy[id] = dy;
+        store.width[id] = getWidth();
+        store.height[id] = getHeight();
+        store.state[id] = (byte)state;
+        store.flags[id] = (isFlying() ? CreatureStore.FLAG_FLYING : 0);
+        store.tier[id] = 0;
+        store.stepTime[id] = 0;
+        store.pendingTime[id] = 0;
+        this.store = store;
+        this.entityId = id;
+    }
+
+
+    /**
+        Moves this Creature's position, velocity and state out of
+        its store and back into this Creature.
+    */
+    void detach() {
+        x = store.x[entityId];
+        y = store.y[entityId];
+        dx = store.dx[entityId];
+        dy = store.dy[entityId];
+        state = store.state[entityId];
+        store = null;
+        entityId = -1;
+    }
+
+
+    /**
+        Gets this Creature's entity id in its CreatureStore, or
+        -1 if it isn't in a store.
+    */
+    public int getEntityId() {
+        return entityId;
+    }
+
+
+    /**
+        Tells the SpriteGrid this Creature is in (if any) that it
+        may have moved.
+    */
+    void syncPosition() {
+        positionChanged();
+    }
+
+
+    public float getX() {
+        return (store != null) ? store.x[entityId] : x;
+    }
+
+
+    public float getY() {
+        return (store != null) ? store.y[entityId] : y;
+    }
+
+
+    public void setX(float x) {
+        if (store != null) {
+            store.x[entityId] = x;
+            positionChanged();
         }
-        catch (Exception ex) {
-            // should never happen
-            ex.printStackTrace();
-            return null;
+        else {
+            super.setX(x);
+        }
+    }
+
+
+    public void setY(float y) {
+        if (store != null) {
+            store.y[entityId] = y;
+            positionChanged();
+        }
+        else {
+            super.setY(y);
+        }
+    }
+
+
+    public float getVelocityX() {
+        return (store != null) ? store.dx[entityId] : dx;
+    }
+
+
+    public float getVelocityY() {
+        return (store != null) ? store.dy[entityId] : dy;
+    }
+
+
+    public void setVelocityX(float dx) {
+        if (store != null) {
+            store.dx[entityId] = dx;
+        }
+        else {
+            this.dx = dx;
+        }
+    }
+
+
+    public void setVelocityY(float dy) {
+        if (store != null) {
+            store.dy[entityId] = dy;
+        }
+        else {
+            this.dy = dy;
         }
     }
 
@@ -104,7 +236,7 @@ public abstract class Creature extends Sprite {
         STATE_NORMAL, STATE_DYING, or STATE_DEAD.
     */
     public int getState() {
-        return state;
+        return (store != null) ? store.state[entityId] : state;
     }
 
 
@@ -113,8 +245,13 @@ public abstract class Creature extends Sprite {
         STATE_DYING, or STATE_DEAD.
     */
     public void setState(int state) {
-        if (this.state != state) {
-            this.state = state;
+        if (getState() != state) {
+            if (store != null) {
+                store.state[entityId] = (byte)state;
+            }
+            else {
+                this.state = state;
+            }
             stateTime = 0;
             if (state == STATE_DYING) {
                 setVelocityX(0);
@@ -128,7 +265,7 @@ public abstract class Creature extends Sprite {
         Checks if this creature is alive.
     */
     public boolean isAlive() {
-        return (state == STATE_NORMAL);
+        return (getState() == STATE_NORMAL);
     }
 
 
@@ -171,10 +308,10 @@ public abstract class Creature extends Sprite {
         else if (getVelocityX() > 0) {
             newAnim = right;
         }
-        if (state == STATE_DYING && newAnim == left) {
+        if (getState() == STATE_DYING && newAnim == left) {
             newAnim = deadLeft;
         }
-        else if (state == STATE_DYING && newAnim == right) {
+        else if (getState() == STATE_DYING && newAnim == right) {
             newAnim = deadRight;
         }
 
@@ -189,7 +326,7 @@ public abstract class Creature extends Sprite {
 
         // update to "dead" state
         stateTime += elapsedTime;
-        if (state == STATE_DYING && stateTime >= DIE_TIME) {
+        if (getState() == STATE_DYING && stateTime >= DIE_TIME) {
             setState(STATE_DEAD);
         }
     }
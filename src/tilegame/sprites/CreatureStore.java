@@ -0,0 +1,196 @@
+package tilegame.sprites;
+
+/**
+    The CreatureStore keeps the simulation state of a set of
+    Creatures (position, velocity, size, state and movement
+    flags) in parallel primitive arrays, indexed by a dense
+    entity id from 0 to size-1. Passes that touch every Creature
+    each tick, like gravity and tile collision, can then run as
+    tight loops over the arrays instead of chasing Creature
+    objects around the heap.
+    <p>
+    While a Creature is in a store, its position, velocity and
+    state accessors read and write the store, so the rest of the
+    game doesn't need to know. Removing a Creature copies its
+    state back into the Creature and moves the last Creature into
+    the freed id, keeping the ids dense.
+    <p>
+    Stats that only change when creatures interact (health,
+    damage, exp and so on) stay in the Creature objects.
+*/
+public class CreatureStore {
+
+    /**
+        Flag for Creatures that fly, unaffected by gravity, while
+        they are alive.
+    */
+    public static final byte FLAG_FLYING = 1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+        The number of Creatures in this store.
+    */
+    public int size;
+
+    // position (pixels)
+    public float[] x;
+    public float[] y;
+    // velocity (pixels per millisecond)
+    public float[] dx;
+    public float[] dy;
+    // size of the Creature's current image (pixels)
+    public int[] width;
+    public int[] height;
+    // Creature.STATE_NORMAL, STATE_DYING or STATE_DEAD
+    public byte[] state;
+    public byte[] flags;
+    // activity tier (GameManager.TIER_ACTIVE etc.), milliseconds
+    // to simulate this tick (0 to skip), and milliseconds saved
+    // up while waiting for a coarse update
+    public byte[] tier;
+    public int[] stepTime;
+    public int[] pendingTime;
+
+    /**
+        The Creature with each entity id.
+    */
+    public Creature[] creatures;
+
+
+    /**
+        Creates a new, empty CreatureStore.
+    */
+    public CreatureStore() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+
+    /**
+        Adds a Creature to this store, moving its simulation
+        state into the arrays. Returns the Creature's entity id.
+    */
+    public int add(Creature creature) {
+        if (creature.store != null) {
+            creature.store.remove(creature);
+        }
+        if (size == creatures.length) {
+            allocate(size * 2);
+        }
+
+        int id = size++;
+        creatures[id] = creature;
+        creature.attach(this, id);
+        return id;
+    }
+
+
+    /**
+        Removes a Creature from this store, copying its
+        simulation state back into the Creature. Does nothing if
+        the Creature isn't in this store.
+    */
+    public void remove(Creature creature) {
+        if (creature.store != this) {
+            return;
+        }
+        int id = creature.entityId;
+        creature.detach();
+
+        // move the last creature into the hole
+        int last = --size;
+        if (id != last) {
+            x[id] = x[last];
+            y[id] = y[last];
+            dx[id] = dx[last];
+            dy[id] = dy[last];
+            width[id] = width[last];
+            height[id] = height[last];
+            state[id] = state[last];
+            flags[id] = flags[last];
+            tier[id] = tier[last];
+            stepTime[id] = stepTime[last];
+            pendingTime[id] = pendingTime[last];
+            creatures[id] = creatures[last];
+            creatures[id].entityId = id;
+        }
+        creatures[last] = null;
+    }
+
+
+    /**
+        Checks if gravity pulls the Creature with the specified
+        id: everything except living flyers.
+    */
+    public boolean hasGravity(int id) {
+        return ((flags[id] & FLAG_FLYING) == 0 ||
+            state[id] != Creature.STATE_NORMAL);
+    }
+
+
+    /**
+        Updates the size of the Creature with the specified id
+        from its current image. Call after its Animation changes.
+    */
+    public void updateSize(int id) {
+        width[id] = creatures[id].getWidth();
+        height[id] = creatures[id].getHeight();
+    }
+
+
+    /**
+        Tells the Creature's SpriteGrid (if any) that the
+        Creature with the specified id may have moved. Passes
+        that write x and y directly should call this afterwards.
+    */
+    public void positionChanged(int id) {
+        creatures[id].syncPosition();
+    }
+
+
+    private void allocate(int capacity) {
+        x = grow(x, capacity);
+        y = grow(y, capacity);
+        dx = grow(dx, capacity);
+        dy = grow(dy, capacity);
+        width = grow(width, capacity);
+        height = grow(height, capacity);
+        state = grow(state, capacity);
+        flags = grow(flags, capacity);
+        tier = grow(tier, capacity);
+        stepTime = grow(stepTime, capacity);
+        pendingTime = grow(pendingTime, capacity);
+        Creature[] newCreatures = new Creature[capacity];
+        if (creatures != null) {
+            System.arraycopy(creatures, 0, newCreatures, 0, size);
+        }
+        creatures = newCreatures;
+    }
+
+
+    private float[] grow(float[] array, int capacity) {
+        float[] newArray = new float[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, size);
+        }
+        return newArray;
+    }
+
+
+    private int[] grow(int[] array, int capacity) {
+        int[] newArray = new int[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, size);
+        }
+        return newArray;
+    }
+
+
+    private byte[] grow(byte[] array, int capacity) {
+        byte[] newArray = new byte[capacity];
+        if (array != null) {
+            System.arraycopy(array, 0, newArray, 0, size);
+        }
+        return newArray;
+    }
+}
@@ -11,12 +11,25 @@ public class Creep_Fly extends Creature {
                      Animation deadLeft, Animation deadRight)
     {
         super(left, right, deadLeft, deadRight);
-        damage = 1;
         newHeight = 48;
         newWidth = 64;
+        tileID = '3';
+        reset();
+    }
+
+    public Object clone() {
+        return new Creep_Fly(
+            (Animation)left.clone(),
+            (Animation)right.clone(),
+            (Animation)deadLeft.clone(),
+            (Animation)deadRight.clone());
+    }
+
+    public void reset() {
+        super.reset();
+        damage = 1;
         health = 2;
         worth = health;
-        tileID = '3';
         this.speed = 0.2f;
         exp = 2;
     }
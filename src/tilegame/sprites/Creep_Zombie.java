@@ -12,12 +12,25 @@ public class Creep_Zombie extends Creature {
                         Animation deadLeft, Animation deadRight)
     {
         super(left, right, deadLeft, deadRight);
-        damage = 1;
         newWidth = 80;
         newHeight = 64;
+        tileID = '4';
+        reset();
+    }
+
+    public Object clone() {
+        return new Creep_Zombie(
+            (Animation)left.clone(),
+            (Animation)right.clone(),
+            (Animation)deadLeft.clone(),
+            (Animation)deadRight.clone());
+    }
+
+    public void reset() {
+        super.reset();
+        damage = 1;
         health = 4;
         worth = health;
-        tileID = '4';
         exp = 3;
         this.speed = 0.06f;
     }
@@ -1,8 +1,8 @@
 package tilegame.sprites;
 
-import graphics.Animation;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import java.lang.reflect.Constructor;
+import graphics.Animation;
 
 /**
     A Fly is a Creature that fly slowly in the air.
@@ -11,7 +11,8 @@ public class Dio extends Creature {
 
     private int id;
     protected int startNextSpawn;
-    private static int idCounter = 1;
+    // Dios are cloned on the map loader thread too
+    private static AtomicInteger idCounter = new AtomicInteger(1);
     private Animation attackLeft;
     private Animation attackRight;
     public boolean isEnraged;
@@ -25,15 +26,19 @@ public class Dio extends Creature {
         super(left, right, deadLeft, deadRight);
         this.attackLeft = attackLeft;
         this.attackRight = attackRight;
-        damage = 3;
         newWidth = 80;
         newHeight = 64;
-        id = idCounter;
-        idCounter++;
+        id = idCounter.getAndIncrement();
+        tileID = '5';
+        reset();
+    }
+
+    public void reset() {
+        super.reset();
+        damage = 3;
         startNextSpawn = 10;
         health = 30;
         worth = health;
-        tileID = '5';
         speed = 0.1f;
         isEnraged = false;
     }
@@ -50,10 +55,10 @@ public class Dio extends Creature {
             if(isEnraged) newAnim = attackRight;
             else newAnim = right;
         }
-        if (state == STATE_DYING && newAnim == left) {
+        if (getState() == STATE_DYING && newAnim == left) {
             newAnim = deadLeft;
         }
-        else if (state == STATE_DYING && newAnim == right) {
+        else if (getState() == STATE_DYING && newAnim == right) {
             newAnim = deadRight;
         }
 
@@ -68,30 +73,20 @@ public class Dio extends Creature {
 
         // update to "dead" state
         stateTime += elapsedTime;
-        if (state == STATE_DYING && stateTime >= DIE_TIME) {
+        if (getState() == STATE_DYING && stateTime >= DIE_TIME) {
             setState(STATE_DEAD);
         }
     }
 
     @Override
     public Object clone() {
-        // use reflection to create the correct subclass
-        Constructor constructor = getClass().getConstructors()[0];
-        try {
-            final Object o;
-            o = constructor.newInstance((Animation) left.clone(),
-                    (Animation) right.clone(),
-                    (Animation) deadLeft.clone(),
-                    (Animation) deadRight.clone(),
-                    (Animation) attackLeft.clone(),
-                    (Animation) attackRight.clone());
-            return o;
-        }
-        catch (Exception ex) {
-            // should never happen
-            ex.printStackTrace();
-            return null;
-        }
+        return new Dio(
+                (Animation) left.clone(),
+                (Animation) right.clone(),
+                (Animation) deadLeft.clone(),
+                (Animation) deadRight.clone(),
+                (Animation) attackLeft.clone(),
+                (Animation) attackRight.clone());
     }
 
     public float getMaxSpeed() {
@@ -17,6 +17,15 @@ public class Fly extends Creature {
     }
 
 
+    public Object clone() {
+        return new Fly(
+            (Animation)left.clone(),
+            (Animation)right.clone(),
+            (Animation)deadLeft.clone(),
+            (Animation)deadRight.clone());
+    }
+
+
     public float getMaxSpeed() {
         return 0.2f;
     }
@@ -17,6 +17,15 @@ public class Grub extends Creature {
     }
 
 
+    public Object clone() {
+        return new Grub(
+            (Animation)left.clone(),
+            (Animation)right.clone(),
+            (Animation)deadLeft.clone(),
+            (Animation)deadRight.clone());
+    }
+
+
     public float getMaxSpeed() {
         return 0.05f;
     }
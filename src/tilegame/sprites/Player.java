@@ -2,8 +2,6 @@ package tilegame.sprites;
 
 import graphics.Animation;
 
-import java.lang.reflect.Constructor;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
     The Player.
@@ -88,7 +86,7 @@ public class Player extends Creature {
             facingRight = true;
             facingLeft = false;
         }
-        else if (state == STATE_NORMAL && onGround && getVelocityY() == 0){
+        else if (getState() == STATE_NORMAL && onGround && getVelocityY() == 0){
             if(facingLeft) newAnim = idleLeft;
             else newAnim = idleRight;
         }
@@ -113,7 +111,7 @@ public class Player extends Creature {
         }
 
 
-        if (state == STATE_DYING) {
+        if (getState() == STATE_DYING) {
             if(facingLeft) newAnim = deadLeft;
             else newAnim = deadRight;
         }
@@ -129,35 +127,24 @@ public class Player extends Creature {
         // update to "dead" state
 //        if(state != STATE_DYING) return;
         stateTime += elapsedTime;
-        if (state == STATE_DYING && stateTime >= DIE_TIME) {
+        if (getState() == STATE_DYING && stateTime >= DIE_TIME) {
             setState(STATE_DEAD);
         }
     }
 
     @Override
     public Object clone() {
-        // use reflection to create the correct subclass
-        Constructor constructor = getClass().getConstructors()[0];
-        try {
-            Object o;
-            o = constructor.newInstance(
-                    (Animation) left.clone(),
-                    (Animation) right.clone(),
-                    (Animation) deadLeft.clone(),
-                    (Animation) deadRight.clone(),
-                    (Animation) idleLeft.clone(),
-                    (Animation) idleRight.clone(),
-                    (Animation) jumpLeft.clone(),
-                    (Animation) jumpRight.clone(),
-                    (Animation) fallLeft.clone(),
-                    (Animation) fallRight.clone());
-            return o;
-        }
-        catch (Exception ex) {
-            // should never happen
-            ex.printStackTrace();
-            return null;
-        }
+        return new Player(
+                (Animation) left.clone(),
+                (Animation) right.clone(),
+                (Animation) deadLeft.clone(),
+                (Animation) deadRight.clone(),
+                (Animation) idleLeft.clone(),
+                (Animation) idleRight.clone(),
+                (Animation) jumpLeft.clone(),
+                (Animation) jumpRight.clone(),
+                (Animation) fallLeft.clone(),
+                (Animation) fallRight.clone());
     }
 
 
@@ -218,8 +205,8 @@ public class Player extends Creature {
     }
 
     public void grace(){
-        this.x -= 15;
-        this.y -= 30;
+        setX(getX() - 15);
+        setY(getY() - 30);
     }
 
     // player dies, reset score
@@ -264,19 +251,6 @@ public class Player extends Creature {
             }
 
     }
-    public ConcurrentHashMap debugString(){
-        ConcurrentHashMap<String, String> s = new ConcurrentHashMap();
-        s.put("x: ", Float.toString(x));
-        s.put("y: ", Float.toString(y));
-        s.put("xvel: ", Float.toString(getVelocityX()));
-        s.put("yvel: ", Float.toString(getVelocityY()));
-        s.put("onground: ", Boolean.toString(onGround));
-        s.put("jumped: ", Boolean.toString(jumped));
-        s.put("left: ", Boolean.toString(facingLeft));
-        s.put("right: ", Boolean.toString(facingRight));
-        s.put("state: ", (getStateString(state)));
-        return s;
-    }
     public String getStateString(int state){
         if(state == STATE_NORMAL) return "NORMAL";
         if(state == STATE_DYING) return "DYING";
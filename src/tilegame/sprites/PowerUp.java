@@ -1,6 +1,5 @@
 package tilegame.sprites;
 
-import java.lang.reflect.Constructor;
 import graphics.*;
 
 /**
@@ -16,19 +15,11 @@ public abstract class PowerUp extends Sprite {
     }
 
 
-    public Object clone() {
-        // use reflection to create the correct subclass
-        Constructor constructor = getClass().getConstructors()[0];
-        try {
-            return constructor.newInstance(
-                new Object[] {(Animation)anim.clone()});
-        }
-        catch (Exception ex) {
-            // should never happen
-            ex.printStackTrace();
-            return null;
-        }
-    }
+    /**
+        Creates a copy of this PowerUp with its own copy of the
+        Animation.
+    */
+    public abstract Object clone();
 
 
     /**
@@ -40,6 +31,10 @@ public abstract class PowerUp extends Sprite {
             tileID = 'h';
             worth = 1;
         }
+
+        public Object clone() {
+            return new Heart((Animation)anim.clone());
+        }
     }
 
 
@@ -51,6 +46,10 @@ public abstract class PowerUp extends Sprite {
             super(anim);
             tileID = 'm';
         }
+
+        public Object clone() {
+            return new Music((Animation)anim.clone());
+        }
     }
 
 
@@ -62,6 +61,10 @@ public abstract class PowerUp extends Sprite {
             super(anim);
             tileID = '*';
         }
+
+        public Object clone() {
+            return new Goal((Animation)anim.clone());
+        }
     }
 
 }